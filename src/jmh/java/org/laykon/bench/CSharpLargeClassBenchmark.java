@@ -0,0 +1,49 @@
+package org.laykon.bench;
+
+import org.laykon.model.ModelRepository;
+import org.laykon.parser.CSharpLanguageParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a single generated C# class of growing size. The score per operation should grow linearly with
+ * {@code methods}; a superlinear jump means a member scan has started re-reading the whole body again.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CSharpLargeClassBenchmark {
+
+    @Param({"1000", "4000", "16000"})
+    public int methods;
+
+    private final CSharpLanguageParser parser = new CSharpLanguageParser();
+    private Path dir;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("plantuml-bench");
+        file = dir.resolve("Large.cs");
+        Files.writeString(file, SyntheticSources.largeCSharpClass(methods));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public ModelRepository parse() throws Exception {
+        ModelRepository repo = new ModelRepository();
+        parser.parse(file, repo);
+        return repo;
+    }
+}
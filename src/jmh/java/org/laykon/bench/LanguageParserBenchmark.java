@@ -0,0 +1,65 @@
+package org.laykon.bench;
+
+import org.laykon.model.ModelRepository;
+import org.laykon.parser.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses one synthetic source file per invocation with each {@link LanguageParser}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LanguageParserBenchmark {
+
+    @Param({"java", "python", "csharp", "typescript"})
+    public String language;
+
+    @Param({"10", "100", "1000"})
+    public int types;
+
+    private LanguageParser parser;
+    private Path dir;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        switch (language) {
+            case "java":
+                parser = new JavaLanguageParser();
+                break;
+            case "python":
+                parser = new PythonLanguageParser();
+                break;
+            case "csharp":
+                parser = new CSharpLanguageParser();
+                break;
+            default:
+                parser = new TypeScriptLanguageParser();
+                break;
+        }
+        dir = Files.createTempDirectory("plantuml-bench");
+        file = dir.resolve("Source." + SyntheticSources.extension(language));
+        Files.writeString(file, SyntheticSources.source(language, types));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public ModelRepository parse() throws Exception {
+        ModelRepository repo = new ModelRepository();
+        parser.parse(file, repo);
+        return repo;
+    }
+}
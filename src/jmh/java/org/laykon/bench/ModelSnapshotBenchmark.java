@@ -0,0 +1,53 @@
+package org.laykon.bench;
+
+import org.laykon.model.ModelRepository;
+import org.laykon.snapshot.ModelSnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves a synthetic model as a snapshot and loads it back. At 100000 types the model holds over a million
+ * members.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ModelSnapshotBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int types;
+
+    private ModelRepository repo;
+    private Path dir;
+    private Path snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        repo = SyntheticSources.repository(types);
+        dir = Files.createTempDirectory("snapshot-bench");
+        snapshot = dir.resolve("model.snap");
+        ModelSnapshot.save(snapshot, repo);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(snapshot);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public void save() throws Exception {
+        ModelSnapshot.save(snapshot, repo);
+    }
+
+    @Benchmark
+    public ModelRepository load() throws Exception {
+        return ModelSnapshot.load(snapshot);
+    }
+}
@@ -0,0 +1,54 @@
+package org.laykon.bench;
+
+import org.laykon.model.ModelRepository;
+import org.laykon.output.PlantUmlWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a synthetic model to a temporary .puml file, and to a discarding writer to isolate the emission
+ * cost from file I/O. Run with the gc profiler (the {@code jmh} task does) to track allocated bytes per
+ * operation alongside the time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlantUmlWriterBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int types;
+
+    private ModelRepository repo;
+    private Path dir;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        repo = SyntheticSources.repository(types);
+        dir = Files.createTempDirectory("plantuml-bench");
+        output = dir.resolve("diagram.puml");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public void write() throws Exception {
+        PlantUmlWriter.write(output, repo);
+    }
+
+    @Benchmark
+    public void emit() throws Exception {
+        PlantUmlWriter.write(Writer.nullWriter(), repo);
+    }
+}
@@ -0,0 +1,187 @@
+package org.laykon.bench;
+
+import org.laykon.model.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deterministic synthetic inputs for the benchmarks. Every type {@code Type<i>} has a handful of fields
+ * and methods that reference its neighbours, so parsers and the writer see realistic relations.
+ */
+final class SyntheticSources {
+    static final int MEMBERS_PER_TYPE = 6;
+
+    private SyntheticSources() {
+    }
+
+    static String source(String language, int types) {
+        switch (language) {
+            case "java":
+                return java(types);
+            case "python":
+                return python(types);
+            case "csharp":
+                return csharp(types);
+            case "typescript":
+                return typescript(types);
+            default:
+                throw new IllegalArgumentException("Unknown language: " + language);
+        }
+    }
+
+    static String extension(String language) {
+        switch (language) {
+            case "java":
+                return "java";
+            case "python":
+                return "py";
+            case "csharp":
+                return "cs";
+            case "typescript":
+                return "ts";
+            default:
+                throw new IllegalArgumentException("Unknown language: " + language);
+        }
+    }
+
+    static String java(int types) {
+        StringBuilder sb = new StringBuilder("package bench;\n\nimport java.util.*;\n\n");
+        for (int i = 0; i < types; i++) {
+            sb.append("class Type").append(i);
+            if (i > 0) {
+                sb.append(" extends Type").append(i - 1);
+            }
+            sb.append(" implements Runnable {\n");
+            for (int m = 0; m < MEMBERS_PER_TYPE; m++) {
+                sb.append("    private List<Type").append(neighbour(i, m, types)).append("> field").append(m).append(";\n");
+            }
+            for (int m = 0; m < MEMBERS_PER_TYPE; m++) {
+                sb.append("    public Type").append(neighbour(i, m, types)).append(" method").append(m)
+                        .append("(int count, Map<String, Type").append(i).append("> lookup) {\n")
+                        .append("        String s = \"{ not a brace }\";\n")
+                        .append("        return count > 0 ? null : lookup.values().iterator().next() == null ? null : null;\n")
+                        .append("    }\n");
+            }
+            sb.append("    public void run() { }\n}\n\n");
+        }
+        return sb.toString();
+    }
+
+    static String python(int types) {
+        StringBuilder sb = new StringBuilder("from typing import List\n\n\n");
+        for (int i = 0; i < types; i++) {
+            sb.append("class Type").append(i);
+            if (i > 0) {
+                sb.append("(Type").append(i - 1).append(")");
+            }
+            sb.append(":\n");
+            for (int m = 0; m < MEMBERS_PER_TYPE; m++) {
+                sb.append("    attr").append(m).append(": Type").append(neighbour(i, m, types)).append("\n");
+            }
+            sb.append("\n    def __init__(self, owner: Type").append(i).append(", count: int):\n");
+            sb.append("        self.owner = owner\n        self.count = count\n\n");
+            for (int m = 0; m < MEMBERS_PER_TYPE; m++) {
+                sb.append("    def method").append(m).append("(self, value: Type").append(neighbour(i, m, types))
+                        .append(", flag: bool) -> Type").append(i).append(":\n")
+                        .append("        text = \"def fake(self): pass\"\n")
+                        .append("        return self\n\n");
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    static String csharp(int types) {
+        StringBuilder sb = new StringBuilder("using System.Collections.Generic;\n\nnamespace Bench\n{\n");
+        for (int i = 0; i < types; i++) {
+            sb.append("    public class Type").append(i);
+            if (i > 0) {
+                sb.append(" : Type").append(i - 1).append(", IDisposable");
+            }
+            sb.append("\n    {\n");
+            for (int m = 0; m < MEMBERS_PER_TYPE; m++) {
+                sb.append("        private List<Type").append(neighbour(i, m, types)).append("> _field").append(m).append(";\n");
+                sb.append("        public Type").append(neighbour(i, m, types)).append(" Prop").append(m).append(" { get; set; }\n");
+            }
+            for (int m = 0; m < MEMBERS_PER_TYPE; m++) {
+                sb.append("        public Type").append(neighbour(i, m, types)).append(" Method").append(m)
+                        .append("(int count, Dictionary<string, Type").append(i).append("> lookup)\n        {\n")
+                        .append("            var s = $\"{count} {{ not a hole }}\";\n")
+                        .append("            var v = @\"verbatim \"\" {\";\n")
+                        .append("            return null;\n        }\n");
+            }
+            sb.append("        public void Dispose() { }\n    }\n\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+    static String typescript(int types) {
+        StringBuilder sb = new StringBuilder("import { Base } from \"./base\";\n\n");
+        for (int i = 0; i < types; i++) {
+            sb.append("export class Type").append(i);
+            if (i > 0) {
+                sb.append(" extends Type").append(i - 1);
+            }
+            sb.append(" implements Disposable {\n");
+            for (int m = 0; m < MEMBERS_PER_TYPE; m++) {
+                sb.append("  private field").append(m).append(": Array<Type").append(neighbour(i, m, types)).append(">;\n");
+            }
+            sb.append("  constructor(private readonly owner: Type").append(i).append(", public count: number) {\n")
+                    .append("    super();\n  }\n");
+            for (int m = 0; m < MEMBERS_PER_TYPE; m++) {
+                sb.append("  async method").append(m).append("(value: Type").append(neighbour(i, m, types))
+                        .append(", flag: boolean): Promise<Type").append(i).append("> {\n")
+                        .append("    const s = `${value} ${ { a: \"}\" }.a }`;\n")
+                        .append("    return this;\n  }\n");
+            }
+            sb.append("  dispose(): void { }\n}\n\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A single C# class with {@code methods} methods, used to check that parse time grows linearly with
+     * the size of one type body.
+     */
+    static String largeCSharpClass(int methods) {
+        StringBuilder sb = new StringBuilder("namespace Bench\n{\n    public class Large : Base\n    {\n");
+        for (int m = 0; m < methods; m++) {
+            sb.append("        private int _field").append(m).append(";\n");
+            sb.append("        public string Name").append(m).append(" { get; set; }\n");
+            sb.append("        public List<Item> Method").append(m).append("(int a, string b)\n        {\n")
+                    .append("            var s = @\"verbatim \"\" {\";\n")
+                    .append("            var t = $\"{a} {{x}} {(b == null ? \"}\" : b)}\";\n")
+                    .append("            if (a > 0) { return null; }\n")
+                    .append("            return new List<Item>();\n        }\n");
+        }
+        return sb.append("    }\n}\n").toString();
+    }
+
+    static ModelRepository repository(int types) {
+        ModelRepository repo = new ModelRepository();
+        for (int i = 0; i < types; i++) {
+            TypeModel type = repo.getOrCreate("Type" + i, i % 10 == 0 ? TypeKind.INTERFACE : TypeKind.CLASS);
+            for (int m = 0; m < MEMBERS_PER_TYPE; m++) {
+                String other = "Type" + neighbour(i, m, types);
+                type.fields.add(new FieldModel("field" + m, m % 3 == 0 ? "" : other));
+                List<String> params = new ArrayList<>();
+                params.add("int");
+                params.add(other);
+                type.methods.add(new MethodModel("method" + m, m % 2 == 0 ? "void" : other, params));
+                type.dependencies.add(other);
+            }
+            if (i > 0) {
+                type.extendsTypes.add("Type" + (i - 1));
+            }
+            if (i > 10) {
+                type.implementsTypes.add("Type" + (i / 10 * 10));
+            }
+        }
+        return repo;
+    }
+
+    private static int neighbour(int i, int m, int types) {
+        return (i + m + 1) % types;
+    }
+}
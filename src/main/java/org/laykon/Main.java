@@ -1,12 +1,28 @@
 package org.laykon;
 
+import org.laykon.cache.ParseCache;
 import org.laykon.model.ModelRepository;
 import org.laykon.output.PlantUmlWriter;
+import org.laykon.output.ShardedWriter;
 import org.laykon.parser.*;
-import org.laykon.util.Debug;
+import org.laykon.snapshot.ModelSnapshot;
+import org.laykon.source.SourceFile;
+import org.laykon.source.SourceScanner;
+import org.laykon.util.Log;
+import org.laykon.util.Metrics;
+import org.laykon.view.DiagramView;
+import org.laykon.view.ViewQuery;
 
+import java.io.IOException;
 import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 
 public class Main {
 
@@ -16,41 +32,277 @@ public class Main {
             new CSharpLanguageParser(),
             new TypeScriptLanguageParser()
     );
+    private static final Map<String, LanguageParser> BY_EXTENSION = byExtension();
+    // Options followed by a value.
+    private static final Set<String> VALUE_OPTIONS = Set.of(
+            "--log-level", "--metrics-json", "--threads", "--io-threads", "--queue-capacity", "--cache",
+            "--snapshot", "--include", "--exclude", "--focus", "--hops", "--relations", "--max-types", "--shard",
+            "--shard-size", "--ignore"
+    );
+    // Watching keeps the process alive, so only files too large to copy onto the heap are mapped.
+    private static final long WATCH_MAP_THRESHOLD = 16L * 1024 * 1024;
+
     public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int ioThreads = Math.min(4, threads);
+        int queueCapacity = 256;
+        Path cacheFile = null;
+        Path snapshotFile = null;
+        Path metricsFile = null;
+        List<String> ignores = new ArrayList<>();
+        boolean defaultIgnores = true;
+        boolean watch = false;
+        ViewQuery view = new ViewQuery();
+        ShardedWriter.Mode shardMode = null;
+        int shardSize = 200;
         int i = 0;
-        if (args.length > 0 && "-d".equals(args[0])) {
-            Debug.setEnabled(true);
-            i = 1;
+        try {
+            while (i < args.length && args[i].startsWith("-")) {
+                if (VALUE_OPTIONS.contains(args[i]) && i + 1 == args.length) {
+                    System.out.println("Missing value for " + args[i]);
+                    usage();
+                    return;
+                }
+                if ("-d".equals(args[i])) {
+                    Log.setLevel(Log.Level.DEBUG);
+                    i++;
+                } else if ("--log-level".equals(args[i])) {
+                    Log.setLevel(Log.Level.valueOf(args[i + 1].toUpperCase(Locale.ROOT)));
+                    i += 2;
+                } else if ("--metrics".equals(args[i])) {
+                    Metrics.setEnabled(true);
+                    i++;
+                } else if ("--metrics-json".equals(args[i])) {
+                    Metrics.setEnabled(true);
+                    metricsFile = Paths.get(args[i + 1]);
+                    i += 2;
+                } else if ("--threads".equals(args[i])) {
+                    threads = count(args[i + 1], 1);
+                    i += 2;
+                } else if ("--io-threads".equals(args[i])) {
+                    ioThreads = count(args[i + 1], 1);
+                    i += 2;
+                } else if ("--queue-capacity".equals(args[i])) {
+                    queueCapacity = count(args[i + 1], 1);
+                    i += 2;
+                } else if ("--cache".equals(args[i])) {
+                    cacheFile = Paths.get(args[i + 1]);
+                    i += 2;
+                } else if ("--snapshot".equals(args[i])) {
+                    snapshotFile = Paths.get(args[i + 1]);
+                    i += 2;
+                } else if ("--include".equals(args[i])) {
+                    view.include(args[i + 1]);
+                    i += 2;
+                } else if ("--exclude".equals(args[i])) {
+                    view.exclude(args[i + 1]);
+                    i += 2;
+                } else if ("--focus".equals(args[i])) {
+                    view.focus(args[i + 1]);
+                    i += 2;
+                } else if ("--hops".equals(args[i])) {
+                    view.hops(count(args[i + 1], 0));
+                    i += 2;
+                } else if ("--relations".equals(args[i])) {
+                    view.relations(ViewQuery.Relations.valueOf(args[i + 1].toUpperCase(Locale.ROOT)));
+                    i += 2;
+                } else if ("--max-types".equals(args[i])) {
+                    view.maxTypes(count(args[i + 1], 0));
+                    i += 2;
+                } else if ("--shard".equals(args[i])) {
+                    shardMode = ShardedWriter.Mode.valueOf(args[i + 1].toUpperCase(Locale.ROOT));
+                    i += 2;
+                } else if ("--shard-size".equals(args[i])) {
+                    shardSize = count(args[i + 1], 1);
+                    i += 2;
+                } else if ("--ignore".equals(args[i])) {
+                    SourceScanner.checkIgnore(args[i + 1]);
+                    ignores.add(args[i + 1]);
+                    i += 2;
+                } else if ("--no-default-ignores".equals(args[i])) {
+                    defaultIgnores = false;
+                    i++;
+                } else if ("--watch".equals(args[i])) {
+                    watch = true;
+                    i++;
+                } else {
+                    System.out.println("Unknown option " + args[i]);
+                    usage();
+                    return;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid value for " + args[i] + ": " + args[i + 1]);
+            usage();
+            return;
         }
 
         if (args.length < i + 2) {
-            System.out.println("Usage: [-d] <srcDir> <output.puml>");
+            usage();
             return;
         }
 
         Path srcRoot = Paths.get(args[i]);
         Path output = Paths.get(args[i + 1]);
-        Debug.log("Debug enabled");
-        Debug.log("Source root: " + srcRoot);
-        Debug.log("Output file: " + output);
-
-        ModelRepository repo = new ModelRepository();
-
-        Files.walk(srcRoot)
-                .filter(Files::isRegularFile)
-                .forEach(p -> PARSERS.forEach(parser -> {
-                    if (parser.extensions().contains(ext(p))) {
-                        try {
-                            Debug.log("Parsing " + p + " with " + parser.getClass().getSimpleName());
-                            parser.parse(p, repo);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                }));
-
-        Debug.log("Writing PlantUML");
-        PlantUmlWriter.write(output, repo);
+        Log.debug(() -> "Source root: " + srcRoot);
+        Log.debug(() -> "Output file: " + output);
+
+        boolean snapshot = ModelSnapshot.isSnapshot(srcRoot);
+        if (snapshot && watch) {
+            System.out.println("--watch needs a source directory, not a snapshot");
+            return;
+        }
+
+        if (watch) {
+            SourceFile.setMapThreshold(WATCH_MAP_THRESHOLD);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ExecutorService readers = ParsePipeline.readers(ioThreads);
+        Log.debug(() -> "Parser threads: " + pool.getParallelism());
+        try {
+            ShardedWriter sharded = shardMode == null ? null : new ShardedWriter(shardMode, shardSize, pool);
+            if (snapshot) {
+                // A saved model stands in for the sources; there is nothing to parse or watch.
+                long start = Metrics.start();
+                ModelRepository repo = ModelSnapshot.load(srcRoot);
+                Metrics.stop(Metrics.Phase.SNAPSHOT, start);
+                warnUnresolved(repo, view);
+                write(output, repo, view, sharded);
+                report(metricsFile);
+                return;
+            }
+
+            long start = Metrics.start();
+            SourceScanner scanner = new SourceScanner(srcRoot, BY_EXTENSION.keySet(), ignores, defaultIgnores, pool);
+            SourceScanner.Listing listing = scanner.scan(srcRoot);
+            List<Path> files = listing.files();
+            Metrics.stop(Metrics.Phase.WALK, start);
+            Log.debug(() -> "Source files: " + files.size());
+
+            start = Metrics.start();
+            ParseCache cache = cacheFile == null ? null : ParseCache.load(cacheFile, parserFingerprint());
+            if (cache != null) {
+                Metrics.stop(Metrics.Phase.CACHE, start);
+            }
+
+            ParsePipeline pipeline = new ParsePipeline(readers, ioThreads, pool, queueCapacity, cache);
+            Watcher watcher = watch
+                    ? new Watcher(srcRoot, scanner, listing.directories(), output, pipeline, cache, view, sharded)
+                    : null;
+            ModelRepository repo = new ModelRepository();
+            pipeline.run(files, repo);
+
+            if (cache != null) {
+                Log.debug(() -> "Parse cache hits: " + cache.hits() + "/" + cache.size());
+                start = Metrics.start();
+                try {
+                    cache.save();
+                } catch (IOException e) {
+                    // The diagram is still written; the next run just parses more.
+                    e.printStackTrace();
+                }
+                Metrics.stop(Metrics.Phase.CACHE, start);
+            }
+            if (snapshotFile != null) {
+                start = Metrics.start();
+                ModelSnapshot.save(snapshotFile, repo);
+                Metrics.stop(Metrics.Phase.SNAPSHOT, start);
+            }
+            warnUnresolved(repo, view);
+            write(output, repo, view, sharded);
+            report(metricsFile);
+
+            if (watcher != null) {
+                watcher.run(repo);
+            }
+        } finally {
+            pool.shutdown();
+            readers.shutdown();
+            Log.flush();
+        }
+    }
+
+    /**
+     * Writes the diagram of {@code view}, split into partitions when {@code sharded} is given.
+     */
+    static void write(Path output, ModelRepository repo, ViewQuery view, ShardedWriter sharded) throws Exception {
+        long start = Metrics.start();
+        DiagramView diagram = view.select(repo);
+        Log.debug(() -> "Writing PlantUML");
+        if (sharded != null) {
+            sharded.write(output, diagram);
+        } else {
+            PlantUmlWriter.write(output, diagram);
+        }
+        Metrics.stop(Metrics.Phase.WRITE, start);
+    }
+
+    private static void usage() {
+        System.out.println("Usage: [-d] [--log-level error|warn|info|debug|trace] [--metrics]"
+                + " [--metrics-json <file>] [--threads N] [--io-threads N] [--queue-capacity N]"
+                + " [--cache <file>] [--snapshot <file>] [--watch]"
+                + " [--ignore <pattern>] [--no-default-ignores]"
+                + " [--include <glob>] [--exclude <glob>] [--focus <type>] [--hops N]"
+                + " [--relations all|inheritance|dependencies] [--max-types N]"
+                + " [--shard package|cluster] [--shard-size N] <srcDir|snapshot> <output.puml>");
+    }
+
+    // A whole number of at least min; anything else is rejected like an unknown enum value.
+    private static int count(String value, int min) {
+        int n = Integer.parseInt(value);
+        if (n < min) {
+            throw new IllegalArgumentException(value);
+        }
+        return n;
+    }
+
+    // Only the first run is reported; in watch mode later regenerations keep adding to the counters.
+    private static void report(Path metricsFile) {
+        if (!Metrics.isEnabled()) {
+            return;
+        }
+        Log.flush();
+        Metrics.printSummary(System.out);
+        if (metricsFile != null) {
+            try {
+                Metrics.writeJson(metricsFile);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void warnUnresolved(ModelRepository repo, ViewQuery view) {
+        for (String missing : view.unresolved(repo)) {
+            System.out.println("Unknown focus type: " + missing);
+        }
+    }
+
+    /**
+     * The parser for {@code p}'s extension, or {@code null} if it is not a source file.
+     */
+    static LanguageParser parserFor(Path p) {
+        return BY_EXTENSION.get(ext(p));
+    }
+
+    private static String parserFingerprint() {
+        StringBuilder sb = new StringBuilder();
+        for (LanguageParser parser : PARSERS) {
+            sb.append(parser.getClass().getName()).append('=').append(parser.version()).append(';');
+        }
+        return sb.toString();
+    }
+
+    // Each extension belongs to the first parser claiming it.
+    private static Map<String, LanguageParser> byExtension() {
+        Map<String, LanguageParser> parsers = new HashMap<>();
+        for (LanguageParser parser : PARSERS) {
+            for (String ext : parser.extensions()) {
+                parsers.putIfAbsent(ext, parser);
+            }
+        }
+        return parsers;
     }
 
     private static String ext(Path p) {
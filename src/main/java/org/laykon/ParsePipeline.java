@@ -0,0 +1,334 @@
+package org.laykon;
+
+import org.laykon.cache.ParseCache;
+import org.laykon.model.ModelFragment;
+import org.laykon.model.ModelRepository;
+import org.laykon.parser.LanguageParser;
+import org.laykon.source.SourceFile;
+import org.laykon.util.Log;
+import org.laykon.util.Metrics;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns source files into a model in three stages joined by bounded queues, so a slow disk and busy parsers
+ * overlap instead of waiting on each other:
+ * <ol>
+ *     <li>reader threads load each file and look it up in the parse cache; hits skip the parsers,</li>
+ *     <li>the parser pool parses what the readers loaded into per-file models,</li>
+ *     <li>the calling thread merges those models into the repository in file order.</li>
+ * </ol>
+ * At most {@code capacity} files are between reading and merging at any time, so the readers wait when
+ * parsing or merging falls behind and memory stays bounded however many files there are. Merging in file
+ * order keeps the model independent of the thread counts.
+ */
+final class ParsePipeline {
+
+    private static final String PARSE_QUEUE = "parse";
+    private static final String MERGE_QUEUE = "merge";
+    // Readers waiting for a free slot in the window show up as blocked on it.
+    private static final String WINDOW = "window";
+    // How often a stage waiting on another checks whether the run has failed.
+    private static final long POLL_MILLIS = 100;
+
+    private final ExecutorService readers;
+    private final int readerCount;
+    private final ForkJoinPool parsers;
+    private final int capacity;
+    private final ParseCache cache;
+
+    /**
+     * @param readers     runs the reader stage, {@code readerCount} tasks at once, as made by {@link #readers}
+     * @param parsers     runs the parser stage, one task per thread
+     * @param capacity    how many files may be between reading and merging
+     */
+    ParsePipeline(ExecutorService readers, int readerCount, ForkJoinPool parsers, int capacity, ParseCache cache) {
+        this.readers = readers;
+        this.readerCount = readerCount;
+        this.parsers = parsers;
+        this.capacity = capacity;
+        this.cache = cache;
+    }
+
+    /**
+     * Parses {@code files} and merges each file's model into {@code repo} in the order given, replacing what
+     * the file contributed before. Returns once every file is merged.
+     */
+    void run(List<Path> files, ModelRepository repo) throws InterruptedException {
+        if (files.isEmpty()) {
+            return;
+        }
+        Run run = new Run(files);
+        for (int i = 0; i < readerCount; i++) {
+            readers.execute(run::read);
+        }
+        for (int i = 0; i < parsers.getParallelism(); i++) {
+            parsers.execute(run::parse);
+        }
+        run.merge(repo);
+    }
+
+    /**
+     * Daemon threads for the reader stage.
+     */
+    static ExecutorService readers(int count) {
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newFixedThreadPool(count, r -> {
+            Thread t = new Thread(r, "reader-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * The state of one pass over a list of files. Should any stage fail, the run is cancelled: every stage
+     * stops waiting and returns, so no thread of the shared pools stays blocked on a run that is over.
+     */
+    private final class Run {
+        private final List<Path> files;
+        private final Semaphore window = new Semaphore(capacity);
+        private final AtomicInteger nextRead = new AtomicInteger();
+        private final AtomicInteger activeReaders = new AtomicInteger(readerCount);
+        private final BlockingQueue<Item> parseQueue = new ArrayBlockingQueue<>(capacity);
+        private final BlockingQueue<Item> mergeQueue = new ArrayBlockingQueue<>(capacity);
+        private volatile Throwable failure;
+
+        private Run(List<Path> files) {
+            this.files = files;
+        }
+
+        // Reader stage: claims files in order, each only once a slot in the window is free.
+        void read() {
+            try {
+                while (true) {
+                    if (!acquire()) {
+                        return;
+                    }
+                    int index = nextRead.getAndIncrement();
+                    if (index >= files.size()) {
+                        window.release();
+                        break;
+                    }
+                    Item item = readFile(index, files.get(index));
+                    if (!put(item.source == null ? mergeQueue : parseQueue, item)) {
+                        return;
+                    }
+                }
+                if (activeReaders.decrementAndGet() == 0) {
+                    for (int i = 0; i < parsers.getParallelism(); i++) {
+                        if (!put(parseQueue, Item.END)) {
+                            return;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                cancel(e);
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                cancel(t);
+            }
+        }
+
+        // Parser stage: runs until the readers send one END per parser task.
+        void parse() {
+            try {
+                Item item;
+                while ((item = takeParse()) != Item.END) {
+                    if (!put(mergeQueue, parseFile(item))) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                cancel(e);
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                cancel(t);
+            }
+        }
+
+        // Merge stage: models arrive in any order and are held back until those of earlier files are merged.
+        void merge(ModelRepository repo) throws InterruptedException {
+            try {
+                mergeAll(repo);
+            } catch (InterruptedException | RuntimeException | Error e) {
+                cancel(e);
+                throw e;
+            }
+        }
+
+        private void mergeAll(ModelRepository repo) throws InterruptedException {
+            ModelFragment[] pending = new ModelFragment[files.size()];
+            int next = 0;
+            while (next < files.size()) {
+                long start = System.nanoTime();
+                Item item;
+                while ((item = mergeQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                    if (failure != null) {
+                        throw new IllegalStateException("Parse pipeline failed", failure);
+                    }
+                }
+                Metrics.dequeue(MERGE_QUEUE, System.nanoTime() - start);
+                pending[item.index] = item.model;
+                start = Metrics.start();
+                while (next < files.size() && pending[next] != null) {
+                    repo.merge(files.get(next), pending[next]);
+                    pending[next] = null;
+                    window.release();
+                    next++;
+                }
+                Metrics.stop(Metrics.Phase.MERGE, start);
+            }
+        }
+
+        /**
+         * Stops the run after {@code t}: the merger reports the first failure, and readers and parsers are
+         * woken up to see it. Blocked stages also check for it while they wait, as a full queue cannot take
+         * the wake-up.
+         */
+        private void cancel(Throwable t) {
+            if (failure == null) {
+                failure = t;
+            }
+            window.release(readerCount);
+            parseQueue.clear();
+            for (int i = 0; i < parsers.getParallelism(); i++) {
+                parseQueue.offer(Item.END);
+            }
+        }
+
+        // Takes a slot in the window; false once the run has failed.
+        private boolean acquire() throws InterruptedException {
+            long start = System.nanoTime();
+            while (!window.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (failure != null) {
+                    return false;
+                }
+            }
+            if (failure != null) {
+                return false;
+            }
+            Metrics.enqueue(WINDOW, capacity - window.availablePermits(), System.nanoTime() - start);
+            return true;
+        }
+
+        // Queues the item; false once the run has failed.
+        private boolean put(BlockingQueue<Item> queue, Item item) throws InterruptedException {
+            long blocked = 0L;
+            if (!queue.offer(item)) {
+                long start = System.nanoTime();
+                while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (failure != null) {
+                        return false;
+                    }
+                }
+                blocked = System.nanoTime() - start;
+            }
+            if (item != Item.END) {
+                Metrics.enqueue(queue == parseQueue ? PARSE_QUEUE : MERGE_QUEUE, queue.size(), blocked);
+            }
+            return true;
+        }
+
+        // The next item to parse; END once the readers are done or the run has failed.
+        private Item takeParse() throws InterruptedException {
+            Item item = parseQueue.poll();
+            if (item == null) {
+                long start = System.nanoTime();
+                while ((item = parseQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                    if (failure != null) {
+                        return Item.END;
+                    }
+                }
+                Metrics.dequeue(PARSE_QUEUE, System.nanoTime() - start);
+            }
+            return failure != null ? Item.END : item;
+        }
+    }
+
+    // Loads the file and answers it from the cache when possible; an item without a source is finished.
+    private Item readFile(int index, Path p) {
+        LanguageParser parser = Main.parserFor(p);
+        if (parser == null) {
+            return new Item(index, null, null, null, null, ModelFragment.EMPTY);
+        }
+
+        SourceFile source;
+        long start = Metrics.start();
+        try {
+            source = SourceFile.open(p);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new Item(index, null, null, null, null, ModelFragment.EMPTY);
+        }
+        Metrics.stop(Metrics.Phase.READ, start);
+
+        byte[] hash = null;
+        String context = null;
+        if (cache != null) {
+            hash = ParseCache.hash(source.bytes());
+            context = parser.context(p);
+            ModelFragment cached = cache.lookup(p, hash, context);
+            if (cached != null) {
+                Log.debug(() -> "Cached " + p);
+                Metrics.count("cache.hits");
+                return new Item(index, null, null, null, null, cached);
+            }
+        }
+        return new Item(index, source, parser, hash, context, null);
+    }
+
+    private Item parseFile(Item item) {
+        ModelFragment fragment = ModelFragment.EMPTY;
+        SourceFile source = item.source;
+        Path p = source.path();
+        try {
+            Log.debug(() -> "Parsing " + p + " with " + item.parser.getClass().getSimpleName());
+            long start = Metrics.start();
+            fragment = item.parser.parse(source);
+            if (Metrics.isEnabled()) {
+                Metrics.file(item.parser.getClass().getSimpleName(), p, source.bytes().limit(),
+                        fragment.types().size(), System.nanoTime() - start);
+            }
+            // Only a successful parse is cached; a failed file is tried again on the next run.
+            if (cache != null) {
+                cache.put(p, item.hash, item.context, fragment);
+            }
+        } catch (Exception | StackOverflowError e) {
+            // One file the parser cannot cope with, even by overflowing the stack, must not stop the run.
+            e.printStackTrace();
+        }
+        return new Item(item.index, null, null, null, null, fragment);
+    }
+
+    /**
+     * A file on its way through the stages: loaded and waiting for its parser, or finished with its model.
+     */
+    private static final class Item {
+        static final Item END = new Item(-1, null, null, null, null, null);
+
+        final int index;
+        final SourceFile source;
+        final LanguageParser parser;
+        final byte[] hash;
+        final String context;
+        final ModelFragment model;
+
+        Item(int index, SourceFile source, LanguageParser parser, byte[] hash, String context, ModelFragment model) {
+            this.index = index;
+            this.source = source;
+            this.parser = parser;
+            this.hash = hash;
+            this.context = context;
+            this.model = model;
+        }
+    }
+}
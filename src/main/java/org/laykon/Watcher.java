@@ -0,0 +1,203 @@
+package org.laykon;
+
+import org.laykon.cache.ParseCache;
+import org.laykon.model.ModelRepository;
+import org.laykon.model.Symbols;
+import org.laykon.output.ShardedWriter;
+import org.laykon.parser.ModulePaths;
+import org.laykon.source.SourceScanner;
+import org.laykon.util.Log;
+import org.laykon.view.ViewQuery;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps the model of a source tree resident and regenerates the diagram whenever files change. Changed
+ * files are re-parsed on their own and replace what they contributed before; deleted files have their
+ * contributions retracted.
+ */
+final class Watcher {
+
+    // Events arriving within this window of each other are handled as one batch.
+    private static final long DEBOUNCE_MILLIS = 50;
+
+    private final Path root;
+    private final SourceScanner scanner;
+    private final Path output;
+    private final ParsePipeline pipeline;
+    private final ParseCache cache;
+    private final ViewQuery view;
+    private final ShardedWriter sharded;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private ModelRepository repo;
+
+    /**
+     * Starts watching {@code root} right away, so changes made while the initial models are built are not lost.
+     *
+     * @param directories the directories {@code scanner} found below {@code root}, to watch
+     */
+    Watcher(Path root, SourceScanner scanner, List<Path> directories, Path output, ParsePipeline pipeline,
+            ParseCache cache, ViewQuery view, ShardedWriter sharded) throws IOException {
+        this.root = root;
+        this.scanner = scanner;
+        this.output = output;
+        this.pipeline = pipeline;
+        this.cache = cache;
+        this.view = view;
+        this.sharded = sharded;
+        this.watchService = root.getFileSystem().newWatchService();
+        register(directories);
+    }
+
+    /**
+     * Takes over the model of the initial run and keeps it up to date until the process ends.
+     */
+    void run(ModelRepository initial) throws Exception {
+        repo = initial;
+        if (cache != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    cache.save();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        System.out.println("Watching " + root + " for changes");
+        // Each batch interns its own symbols; the model built so far keeps its strings either way.
+        Symbols.clear();
+
+        try (WatchService ws = watchService) {
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<>();
+                boolean overflow = collect(ws.take(), changed);
+                WatchKey key;
+                while ((key = ws.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= collect(key, changed);
+                }
+                if (overflow) {
+                    Log.debug(() -> "Watch events overflowed, rescanning " + root);
+                    changed.addAll(repo.sources());
+                    changed.addAll(scanner.scan(root).files());
+                }
+                try {
+                    update(changed);
+                } finally {
+                    Symbols.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the paths touched by {@code key}'s events to {@code changed} and returns whether events were lost.
+     */
+    private boolean collect(WatchKey key, Set<Path> changed) throws IOException {
+        Path dir = directories.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || dir == null) {
+                overflow = true;
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                // Files can land in a new directory before it is registered.
+                SourceScanner.Listing listing = scanner.scan(path);
+                register(listing.directories());
+                changed.addAll(listing.files());
+            } else {
+                changed.add(path);
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+        return overflow;
+    }
+
+    private void update(Set<Path> changed) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        // Directories may have gained or lost markers in any batch, also inside directories created since.
+        ModulePaths.forget();
+        affected(changed);
+        List<Path> reparse = new ArrayList<>();
+        int removed = 0;
+        for (Path path : changed) {
+            if (Files.isRegularFile(path) && scanner.accepts(path)) {
+                reparse.add(path);
+            } else if (!Files.exists(path)) {
+                removed += retract(path);
+            }
+        }
+        if (reparse.isEmpty() && removed == 0) {
+            return;
+        }
+
+        try {
+            pipeline.run(reparse, repo);
+            Main.write(output, repo, view, sharded);
+        } catch (Exception e) {
+            // Keep watching: the next change gets another chance to parse and write the diagram.
+            e.printStackTrace();
+            return;
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.println("Updated " + output + " (" + reparse.size() + " parsed, " + removed + " removed) in "
+                + millis + " ms");
+    }
+
+    /**
+     * Adds the files whose module path may have changed with the {@code __init__.py}, {@code package.json} or
+     * {@code tsconfig.json} files among {@code changed}: all files in and below their directories. The cache
+     * keeps answering those whose module stayed the same.
+     */
+    private void affected(Set<Path> changed) {
+        List<Path> dirs = new ArrayList<>();
+        for (Path path : changed) {
+            if (ModulePaths.isMarker(path)) {
+                dirs.add(path.getParent());
+            }
+        }
+        if (dirs.isEmpty()) {
+            return;
+        }
+        for (Path file : repo.sources()) {
+            for (Path dir : dirs) {
+                if (file.startsWith(dir)) {
+                    changed.add(file);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Retracts {@code path} and, for a deleted directory, every file below it.
+     */
+    private int retract(Path path) {
+        int removed = 0;
+        for (Path file : repo.sources()) {
+            if (file.startsWith(path)) {
+                repo.retract(file);
+                if (cache != null) {
+                    cache.remove(file);
+                }
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private void register(List<Path> dirs) throws IOException {
+        for (Path d : dirs) {
+            directories.put(d.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), d);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.laykon.cache;
+
+import org.laykon.model.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * On-disk cache of per-file parse results, keyed by source path, content hash and the parser's context for
+ * the file, such as the module path its directories give it.
+ * <p>
+ * The whole cache is dropped when its format or the parser fingerprint differs from the
+ * running build, so a parser change never serves stale models. Only entries used by the
+ * current run are written back, which evicts deleted and renamed files.
+ */
+public final class ParseCache {
+
+    private static final int MAGIC = 0x50554d43;
+    private static final int FORMAT_VERSION = 6;
+
+    private final Path file;
+    private final String fingerprint;
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+    private ParseCache(Path file, String fingerprint, Map<String, Entry> previous) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+        this.previous = previous;
+    }
+
+    public static ParseCache load(Path file, String fingerprint) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (Files.isRegularFile(file)) {
+            // Read whole, so a corrupt string length is caught before anything is allocated for it.
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+                if (in.readInt() == MAGIC && in.readInt() == FORMAT_VERSION && fingerprint.equals(readString(in))) {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        String source = readString(in);
+                        byte[] hash = new byte[in.readUnsignedByte()];
+                        in.readFully(hash);
+                        String context = readString(in);
+                        if (source == null || context == null) {
+                            throw new IOException("Corrupt parse cache entry " + i);
+                        }
+                        entries.put(source, new Entry(hash, context, readFragment(in)));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // A corrupt or stale file is dropped and rebuilt by this run.
+                entries.clear();
+                e.printStackTrace();
+            }
+        }
+        return new ParseCache(file, fingerprint, entries);
+    }
+
+    public static byte[] hash(byte[] content) {
+        return hash(ByteBuffer.wrap(content));
+    }
+
+    public static byte[] hash(ByteBuffer content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content.duplicate());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the cached model for {@code source} if it was produced from content with the given hash in the
+     * given context, otherwise {@code null}.
+     */
+    public ModelFragment lookup(Path source, byte[] hash, String context) {
+        String key = key(source);
+        Entry entry = previous.get(key);
+        if (entry == null || !Arrays.equals(entry.hash, hash) || !entry.context.equals(context)) {
+            return null;
+        }
+        current.put(key, entry);
+        return entry.model;
+    }
+
+    public void put(Path source, byte[] hash, String context, ModelFragment model) {
+        current.put(key(source), new Entry(hash, context, model));
+    }
+
+    public void remove(Path source) {
+        current.remove(key(source));
+    }
+
+    public int hits() {
+        int hits = 0;
+        for (Map.Entry<String, Entry> e : current.entrySet()) {
+            if (previous.get(e.getKey()) == e.getValue()) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    public int size() {
+        return current.size();
+    }
+
+    public void save() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, fingerprint);
+            List<String> keys = new ArrayList<>(current.keySet());
+            Collections.sort(keys);
+            out.writeInt(keys.size());
+            for (String key : keys) {
+                Entry entry = current.get(key);
+                writeString(out, key);
+                out.writeByte(entry.hash.length);
+                out.write(entry.hash);
+                writeString(out, entry.context);
+                writeFragment(out, entry.model);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String key(Path source) {
+        return source.toAbsolutePath().normalize().toString();
+    }
+
+    private static void writeFragment(DataOutputStream out, ModelFragment fragment) throws IOException {
+        List<TypeModel> types = fragment.types();
+        out.writeInt(types.size());
+        for (TypeModel t : types) {
+            writeString(out, t.namespace);
+            writeString(out, t.localName());
+            out.writeByte(t.kind().ordinal());
+            out.writeBoolean(t.isPartial());
+            out.writeInt(t.fields.size());
+            for (FieldModel f : t.fields) {
+                writeString(out, f.name);
+                writeString(out, f.type);
+                out.writeInt(f.line);
+            }
+            out.writeInt(t.methods.size());
+            for (MethodModel m : t.methods) {
+                writeString(out, m.name);
+                writeString(out, m.returnType);
+                writeStrings(out, m.parameters);
+                out.writeInt(m.line);
+            }
+            writeStrings(out, t.extendsTypes);
+            writeStrings(out, t.implementsTypes);
+            writeStrings(out, t.dependencies);
+        }
+    }
+
+    private static ModelFragment readFragment(DataInputStream in) throws IOException {
+        ModelRepository repo = new ModelRepository();
+        TypeKind[] kinds = TypeKind.values();
+        int typeCount = in.readInt();
+        for (int i = 0; i < typeCount; i++) {
+            TypeModel t = repo.getOrCreate(readString(in), readString(in), kinds[in.readUnsignedByte()]);
+            if (in.readBoolean()) {
+                t.markPartial();
+            }
+            int fieldCount = in.readInt();
+            for (int j = 0; j < fieldCount; j++) {
+                t.fields.add(new FieldModel(readString(in), readString(in), in.readInt()));
+            }
+            int methodCount = in.readInt();
+            for (int j = 0; j < methodCount; j++) {
+                String name = readString(in);
+                String returnType = readString(in);
+                List<String> params = new ArrayList<>();
+                readStrings(in, params);
+                t.methods.add(new MethodModel(name, returnType, params, in.readInt()));
+            }
+            readStrings(in, t.extendsTypes);
+            readStrings(in, t.implementsTypes);
+            readStrings(in, t.dependencies);
+        }
+        return ModelFragment.of(repo);
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+        List<String> copy = new ArrayList<>(values);
+        out.writeInt(copy.size());
+        for (String v : copy) {
+            writeString(out, v);
+        }
+    }
+
+    private static void readStrings(DataInputStream in, Collection<String> target) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            target.add(readString(in));
+        }
+    }
+
+    // Length-prefixed UTF-8 rather than writeUTF, which fails on strings over 64 KB; -1 stands for null.
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new EOFException("String of " + length + " bytes past the end of the cache");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Entry {
+        private final byte[] hash;
+        private final String context;
+        private final ModelFragment model;
+
+        private Entry(byte[] hash, String context, ModelFragment model) {
+            this.hash = hash;
+            this.context = context;
+            this.model = model;
+        }
+    }
+}
@@ -3,9 +3,16 @@ package org.laykon.model;
 public class FieldModel {
     public final String name;
     public final String type;
+    /** Line the field is declared on, counting from 1, or 0 when unknown. */
+    public final int line;
 
     public FieldModel(String name, String type) {
-        this.name = name;
-        this.type = type;
+        this(name, type, 0);
+    }
+
+    public FieldModel(String name, String type, int line) {
+        this.name = Symbols.intern(name);
+        this.type = Symbols.intern(type);
+        this.line = line;
     }
 }
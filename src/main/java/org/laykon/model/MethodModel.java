@@ -6,10 +6,17 @@ public class MethodModel {
     public final String name;
     public final String returnType;
     public final List<String> parameters;
+    /** Line the method is declared on, counting from 1, or 0 when unknown. */
+    public final int line;
 
     public MethodModel(String name, String returnType, List<String> parameters) {
-        this.name = name;
-        this.returnType = returnType;
-        this.parameters = parameters;
+        this(name, returnType, parameters, 0);
+    }
+
+    public MethodModel(String name, String returnType, List<String> parameters, int line) {
+        this.name = Symbols.intern(name);
+        this.returnType = Symbols.intern(returnType);
+        this.parameters = Symbols.internAll(parameters);
+        this.line = line;
     }
 }
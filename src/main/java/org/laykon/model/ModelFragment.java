@@ -0,0 +1,41 @@
+package org.laykon.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The types parsed from one file, frozen. A fragment is never modified once built, so parser threads,
+ * the parse cache and the shared model can all hold it without locking; {@link ModelRepository#merge}
+ * keeps it as the file's contribution.
+ */
+public final class ModelFragment {
+
+    public static final ModelFragment EMPTY = new ModelFragment(Collections.emptyList());
+
+    private final List<TypeModel> types;
+
+    private ModelFragment(List<TypeModel> types) {
+        this.types = types;
+    }
+
+    /**
+     * Freezes the types a parser built in {@code scratch}, a repository used for that one file only.
+     */
+    public static ModelFragment of(ModelRepository scratch) {
+        List<TypeModel> types = new ArrayList<>();
+        synchronized (scratch.all()) {
+            for (TypeModel t : scratch.all()) {
+                types.add(t.frozen());
+            }
+        }
+        return new ModelFragment(Collections.unmodifiableList(types));
+    }
+
+    /**
+     * The types in the order the parser declared them.
+     */
+    public List<TypeModel> types() {
+        return types;
+    }
+}
@@ -1,20 +1,258 @@
 package org.laykon.model;
 
+import java.nio.file.Path;
 import java.util.*;
 
 public class ModelRepository {
 
-    private final Map<String, TypeModel> types = new HashMap<>();
+    private final Map<String, TypeModel> types = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    private static final Comparator<TypeModel> BY_NAME = Comparator.comparing(t -> t.name);
+
+    // Symbol index: qualified, local and simple name of every type. Guarded by the types lock.
+    private final Map<String, TypeModel> symbols = new HashMap<>();
+
+    // Types claiming a symbol besides the one holding it, so the symbol passes on when its holder is dropped.
+    // Only symbols claimed more than once have an entry. Guarded by the types lock.
+    private final Map<String, List<TypeModel>> contested = new HashMap<>();
+
+    // Scoped index: types by the namespace or type they are declared in, then by simple name, for
+    // resolving a reference from where it is written. The container and simple name together make up the
+    // qualified name, so each entry has one type only. Guarded by the types lock.
+    private final Map<String, Map<String, TypeModel>> scopes = new HashMap<>();
+
+    // Global types each merged file contributed to. Guarded by the types lock.
+    private final Map<Path, List<TypeModel>> bySource = new LinkedHashMap<>();
 
     public TypeModel getOrCreate(String name, TypeKind kind) {
-        return types.computeIfAbsent(name, n -> new TypeModel(n, kind));
+        return getOrCreate("", name, kind);
+    }
+
+    /**
+     * Returns the type {@code localName} declared in {@code namespace}, creating it if needed. Types are
+     * identified by their qualified name, so equally named types of different namespaces stay apart.
+     */
+    public TypeModel getOrCreate(String namespace, String localName, TypeKind kind) {
+        String name = namespace.isEmpty() ? localName : namespace + "." + localName;
+        return types.computeIfAbsent(name, n -> index(new TypeModel(n, kind, namespace)));
     }
 
     public Collection<TypeModel> all() {
         return types.values();
     }
 
+    /**
+     * Every type, sorted by qualified name: the order diagrams list types in, the same however the model
+     * was built.
+     */
+    public TypeModel[] ordered() {
+        TypeModel[] sorted;
+        synchronized (types) {
+            sorted = types.values().toArray(new TypeModel[0]);
+        }
+        Arrays.parallelSort(sorted, BY_NAME);
+        return sorted;
+    }
+
     public boolean contains(String name) {
         return types.containsKey(name);
     }
+
+    /**
+     * Resolves a type reference as written in source ({@code Foo}, {@code pkg.Foo}, {@code Foo<Bar>},
+     * {@code Foo[]}) to the type it names, or {@code null} when no such type is known. An exact or
+     * erased match wins over a match on the simple name alone.
+     */
+    public TypeModel resolve(String reference) {
+        return resolve(reference, null);
+    }
+
+    /**
+     * Resolves a reference written in {@code from}: a simple name is looked up among the types nested in
+     * {@code from}, then beside it, then in its namespace, before anywhere else. Each step is a hash lookup.
+     */
+    public TypeModel resolve(String reference, TypeModel from) {
+        if (reference == null || reference.isEmpty()) {
+            return null;
+        }
+        String erased = erase(reference);
+        synchronized (types) {
+            if (from != null && erased.indexOf('.') < 0) {
+                TypeModel type = lookup(from.name, erased);
+                if (type == null) {
+                    type = lookup(from.container, erased);
+                }
+                if (type == null && !from.namespace.equals(from.container)) {
+                    type = lookup(from.namespace, erased);
+                }
+                if (type != null) {
+                    return type;
+                }
+            }
+            TypeModel type = symbols.get(reference);
+            if (type == null) {
+                type = symbols.get(erased);
+            }
+            if (type == null) {
+                type = symbols.get(simpleName(erased));
+            }
+            return type;
+        }
+    }
+
+    /**
+     * Folds the model parsed from {@code source} into this repository, in {@code fragment}'s order, replacing
+     * whatever {@code source} contributed before. See {@link TypeModel#merge} for how the declarations of a
+     * type in several files combine, and {@link TypeModel#kind()} for the kind it gets. The result depends
+     * only on the order fragments are merged in, never on the threads that parsed them.
+     */
+    public void merge(Path source, ModelFragment fragment) {
+        synchronized (types) {
+            List<TypeModel> previous = bySource.remove(source);
+            if (previous != null) {
+                for (TypeModel t : previous) {
+                    t.retract(source);
+                }
+            }
+            List<TypeModel> touched = new ArrayList<>();
+            for (TypeModel t : fragment.types()) {
+                TypeModel target = types.computeIfAbsent(t.name, n -> index(new TypeModel(n, t.kind(), t.namespace)));
+                target.merge(source, t);
+                touched.add(target);
+            }
+            bySource.put(source, touched);
+            if (previous != null) {
+                dropOrphans(previous);
+            }
+        }
+    }
+
+    /**
+     * Removes everything {@code source} contributed, including types no other file declares.
+     */
+    public void retract(Path source) {
+        synchronized (types) {
+            List<TypeModel> previous = bySource.remove(source);
+            if (previous == null) {
+                return;
+            }
+            for (TypeModel t : previous) {
+                t.retract(source);
+            }
+            dropOrphans(previous);
+        }
+    }
+
+    /**
+     * Files merged into this repository, in merge order.
+     */
+    public Set<Path> sources() {
+        synchronized (types) {
+            return new LinkedHashSet<>(bySource.keySet());
+        }
+    }
+
+    // Called under the types lock. Removes types left without contributions; the symbols they held go to
+    // the remaining type that claims them with the smallest name.
+    private void dropOrphans(List<TypeModel> candidates) {
+        for (TypeModel t : candidates) {
+            if (t.hasContributions() || types.get(t.name) != t) {
+                continue;
+            }
+            types.remove(t.name);
+            for (String key : keys(t)) {
+                release(key, t);
+            }
+            Map<String, TypeModel> scope = scopes.get(t.container);
+            if (scope != null && scope.remove(t.simpleName(), t) && scope.isEmpty()) {
+                scopes.remove(t.container);
+            }
+        }
+    }
+
+    // Called under the types lock. Of the types claiming a key, the one with the smallest name keeps it, so
+    // resolution does not depend on the order types were added in.
+    private TypeModel index(TypeModel type) {
+        for (String key : keys(type)) {
+            claim(key, type);
+        }
+        scopes.computeIfAbsent(type.container, k -> new HashMap<>())
+                .merge(type.simpleName(), type, ModelRepository::smaller);
+        return type;
+    }
+
+    // The qualified, local and simple name, each once.
+    private static List<String> keys(TypeModel type) {
+        String local = type.localName();
+        String simple = type.simpleName();
+        List<String> keys = new ArrayList<>(3);
+        keys.add(type.name);
+        if (!local.equals(type.name)) {
+            keys.add(local);
+        }
+        if (!simple.equals(local)) {
+            keys.add(simple);
+        }
+        return keys;
+    }
+
+    private void claim(String key, TypeModel type) {
+        TypeModel holder = symbols.putIfAbsent(key, type);
+        if (holder != null && holder != type) {
+            TypeModel winner = smaller(holder, type);
+            symbols.put(key, winner);
+            contested.computeIfAbsent(key, k -> new ArrayList<>()).add(winner == type ? holder : type);
+        }
+    }
+
+    private void release(String key, TypeModel type) {
+        List<TypeModel> others = contested.get(key);
+        if (others == null) {
+            symbols.remove(key, type);
+            return;
+        }
+        if (symbols.get(key) == type) {
+            TypeModel next = Collections.min(others, BY_NAME);
+            others.remove(next);
+            symbols.put(key, next);
+        } else {
+            others.remove(type);
+        }
+        if (others.isEmpty()) {
+            contested.remove(key);
+        }
+    }
+
+    private static TypeModel smaller(TypeModel a, TypeModel b) {
+        return BY_NAME.compare(a, b) <= 0 ? a : b;
+    }
+
+    // Called under the types lock.
+    private TypeModel lookup(String scope, String simpleName) {
+        Map<String, TypeModel> members = scopes.get(scope);
+        return members == null ? null : members.get(simpleName);
+    }
+
+    /**
+     * Strips type arguments, array brackets and nullability markers: {@code Map<K, V>[]?} becomes {@code Map}.
+     */
+    static String erase(String reference) {
+        int end = reference.length();
+        for (int i = 0; i < reference.length(); i++) {
+            char c = reference.charAt(i);
+            if (c == '<' || c == '[' || c == '?' || c == '!') {
+                end = i;
+                break;
+            }
+        }
+        return reference.substring(0, end).trim();
+    }
+
+    /**
+     * Last segment of a qualified name, for {@code .} as well as {@code ::} separators.
+     */
+    static String simpleName(String name) {
+        int i = Math.max(name.lastIndexOf('.'), name.lastIndexOf(':'));
+        return i < 0 ? name : name.substring(i + 1);
+    }
 }
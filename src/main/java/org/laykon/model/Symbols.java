@@ -0,0 +1,59 @@
+package org.laykon.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Symbol table for one run. Names and type strings are canonicalised as they enter the model, so a type
+ * name such as {@code String} or {@code List<Task>} is held once however many members mention it.
+ * Safe to use from every parsing thread. A long-lived process clears it between runs with {@link #clear()},
+ * so it does not keep every name it has ever seen.
+ */
+public final class Symbols {
+
+    private static final ConcurrentHashMap<String, String> TABLE = new ConcurrentHashMap<>(1 << 14);
+
+    private Symbols() {
+    }
+
+    public static String intern(String s) {
+        if (s == null) {
+            return null;
+        }
+        // Most strings are already known; get does not lock a bin the way putIfAbsent does.
+        String canonical = TABLE.get(s);
+        if (canonical != null) {
+            return canonical;
+        }
+        canonical = TABLE.putIfAbsent(s, s);
+        return canonical == null ? s : canonical;
+    }
+
+    /**
+     * Returns an unmodifiable, array-backed list of the canonical instances of {@code values}.
+     */
+    public static List<String> internAll(List<String> values) {
+        if (values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String[] interned = new String[values.size()];
+        for (int i = 0; i < interned.length; i++) {
+            interned[i] = intern(values.get(i));
+        }
+        return Collections.unmodifiableList(Arrays.asList(interned));
+    }
+
+    /**
+     * Forgets all symbols. Strings already in a model stay as they are; only later ones are no longer shared
+     * with them. Call it while nothing is being parsed.
+     */
+    public static void clear() {
+        TABLE.clear();
+    }
+
+    public static int size() {
+        return TABLE.size();
+    }
+}
@@ -1,20 +1,315 @@
 package org.laykon.model;
 
+import org.laykon.util.Log;
+
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Function;
 
 public class TypeModel {
+    private static final List<Function<TypeModel, Set<String>>> RELATIONS =
+            List.of(t -> t.extendsTypes, t -> t.implementsTypes, t -> t.dependencies);
+
+    /** Fully qualified name: the namespace, then any enclosing types, then the type's own name, joined by dots. */
     public final String name;
-    public final TypeKind kind;
+    // Of a type declared in several files, the kind of the declaration that counts; see kind().
+    private volatile TypeKind kind;
+    /** Java package, C# namespace, or Python or TypeScript module path; empty when there is none. */
+    public final String namespace;
+    // The namespace, or for a nested type the enclosing type's name.
+    final String container;
+
+    public final List<FieldModel> fields;
+    public final List<MethodModel> methods;
+
+    public final Set<String> extendsTypes;
+    public final Set<String> implementsTypes;
+    public final Set<String> dependencies;
 
-    public final List<FieldModel> fields = new ArrayList<>();
-    public final List<MethodModel> methods = new ArrayList<>();
+    // Declared as one part of a type that may be spread over several files, like a C# partial class.
+    private boolean partial;
 
-    public final Set<String> extendsTypes = new HashSet<>();
-    public final Set<String> implementsTypes = new HashSet<>();
-    public final Set<String> dependencies = new HashSet<>();
+    // The type as parsed from each contributing file, by path. Empty for per-file models.
+    private final NavigableMap<Path, TypeModel> contributions = new TreeMap<>();
+    // The complete declaration in effect and its file, or null when there are only partial ones.
+    private Path declaring;
+    private TypeModel declaration;
+    // For each of RELATIONS, how many contributions in effect declare each relation. Only kept while more
+    // than one file contributes; a single contribution's relations are simply the type's.
+    private List<Map<String, Integer>> relationCounts;
 
     public TypeModel(String name, TypeKind kind) {
-        this.name = name;
+        this(name, kind, "");
+    }
+
+    public TypeModel(String name, TypeKind kind, String namespace) {
+        this.name = Symbols.intern(name);
         this.kind = kind;
+        this.namespace = Symbols.intern(namespace);
+        int dot = this.name.lastIndexOf('.');
+        this.container = dot < 0 ? "" : Symbols.intern(this.name.substring(0, dot));
+        this.fields = Collections.synchronizedList(new ArrayList<>());
+        this.methods = Collections.synchronizedList(new ArrayList<>());
+        // Sorted, so relations come out in the same order whatever order files were parsed in.
+        this.extendsTypes = Collections.synchronizedSet(new TreeSet<>());
+        this.implementsTypes = Collections.synchronizedSet(new TreeSet<>());
+        this.dependencies = Collections.synchronizedSet(new TreeSet<>());
+    }
+
+    // An unmodifiable copy of a per-file type; see frozen().
+    private TypeModel(TypeModel parsed) {
+        this.name = parsed.name;
+        this.kind = parsed.kind;
+        this.namespace = parsed.namespace;
+        this.container = parsed.container;
+        this.partial = parsed.partial;
+        synchronized (parsed.fields) {
+            this.fields = Collections.unmodifiableList(new ArrayList<>(parsed.fields));
+        }
+        synchronized (parsed.methods) {
+            this.methods = Collections.unmodifiableList(new ArrayList<>(parsed.methods));
+        }
+        this.extendsTypes = interned(parsed.extendsTypes);
+        this.implementsTypes = interned(parsed.implementsTypes);
+        this.dependencies = interned(parsed.dependencies);
+    }
+
+    /**
+     * Class, interface, struct or enum. A type declared in several files is of the kind its complete
+     * declaration has, or with only partial ones, the kind of the first by path.
+     */
+    public TypeKind kind() {
+        return kind;
+    }
+
+    /**
+     * The name within its namespace, enclosing types included: {@code Map.Entry} for {@code java.util.Map.Entry}.
+     */
+    public String localName() {
+        return namespace.isEmpty() ? name : name.substring(namespace.length() + 1);
+    }
+
+    /**
+     * The name the type is declared with: {@code Entry} for {@code java.util.Map.Entry}.
+     */
+    public String simpleName() {
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Marks this declaration as one part of a type that other files may declare more of.
+     */
+    public void markPartial() {
+        partial = true;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * Files that contributed to this type.
+     */
+    public synchronized Set<Path> sources() {
+        return new LinkedHashSet<>(contributions.keySet());
+    }
+
+    /**
+     * What {@code source} contributed to this type, or {@code null}. Its relation sets tell which file
+     * declared a given supertype or dependency.
+     */
+    public synchronized TypeModel contribution(Path source) {
+        return contributions.get(source);
+    }
+
+    /**
+     * The file a field or method of this type was parsed from, or {@code null} if it is not a member.
+     */
+    public synchronized Path sourceOf(Object member) {
+        for (Map.Entry<Path, TypeModel> e : contributions.entrySet()) {
+            if (containsSame(e.getValue().fields, member) || containsSame(e.getValue().methods, member)) {
+                return e.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * An unmodifiable copy of this per-file type, with relation names canonicalised, to be merged into
+     * shared models.
+     */
+    TypeModel frozen() {
+        return new TypeModel(this);
+    }
+
+    /**
+     * Adds {@code other}, a frozen type parsed from {@code source}. Contributions are combined in path order,
+     * not merge order, so the members do not depend on the order files are found or parsed in. Partial
+     * declarations are all combined; of the complete ones only the first counts, and the others are kept
+     * aside, so they take over if the first is retracted. Only the members of the contributions that come
+     * or go are touched, however many files declare the type.
+     */
+    synchronized void merge(Path source, TypeModel other) {
+        retract(source);
+        contributions.put(source, other);
+        if (other.partial) {
+            insert(source, other);
+        } else if (declaring == null) {
+            declare(source, other);
+            insert(source, other);
+        } else {
+            Path previous = declaring;
+            if (source.compareTo(previous) < 0) {
+                remove(previous, declaration);
+                declare(source, other);
+                insert(source, other);
+            }
+            Path kept = declaring;
+            Path dropped = kept.equals(source) ? previous : source;
+            Log.warn(() -> "Duplicate declaration of " + name + " in " + dropped + ", keeping the one in " + kept);
+        }
+        updateKind();
+    }
+
+    /**
+     * Removes everything {@code source} contributed; what the remaining files contribute is combined by the
+     * same rules as {@link #merge}, so a relation still declared elsewhere is kept.
+     */
+    synchronized void retract(Path source) {
+        TypeModel c = contributions.get(source);
+        if (c == null) {
+            return;
+        }
+        if (inEffect(c)) {
+            remove(source, c);
+        }
+        contributions.remove(source);
+        if (c == declaration) {
+            declare(null, null);
+            for (Map.Entry<Path, TypeModel> e : contributions.entrySet()) {
+                if (!e.getValue().partial) {
+                    declare(e.getKey(), e.getValue());
+                    insert(e.getKey(), e.getValue());
+                    break;
+                }
+            }
+        }
+        if (contributions.size() <= 1) {
+            relationCounts = null;
+        }
+        updateKind();
+    }
+
+    synchronized boolean hasContributions() {
+        return !contributions.isEmpty();
+    }
+
+    private void declare(Path source, TypeModel c) {
+        declaring = source;
+        declaration = c;
+    }
+
+    // Whether a contribution is part of the type: a partial declaration or the complete one in effect.
+    private boolean inEffect(TypeModel c) {
+        return c.partial || c == declaration;
+    }
+
+    // Adds a contribution's members at its place in path order, after those of the files before it.
+    private void insert(Path source, TypeModel c) {
+        if (relationCounts == null && contributions.size() > 1) {
+            relationCounts = new ArrayList<>(RELATIONS.size());
+            for (int i = 0; i < RELATIONS.size(); i++) {
+                relationCounts.add(new HashMap<>());
+            }
+            for (TypeModel other : contributions.values()) {
+                if (other != c && inEffect(other)) {
+                    count(other, 1);
+                }
+            }
+        }
+        if (contributions.lastKey().equals(source)) {
+            fields.addAll(c.fields);
+            methods.addAll(c.methods);
+        } else {
+            int[] before = membersBefore(source);
+            fields.addAll(before[0], c.fields);
+            methods.addAll(before[1], c.methods);
+        }
+        for (int i = 0; i < RELATIONS.size(); i++) {
+            RELATIONS.get(i).apply(this).addAll(RELATIONS.get(i).apply(c));
+        }
+        if (relationCounts != null) {
+            count(c, 1);
+        }
+    }
+
+    // Takes out a contribution's members, and the relations no other contribution in effect declares.
+    private void remove(Path source, TypeModel c) {
+        int[] before = membersBefore(source);
+        fields.subList(before[0], before[0] + c.fields.size()).clear();
+        methods.subList(before[1], before[1] + c.methods.size()).clear();
+        for (int i = 0; i < RELATIONS.size(); i++) {
+            Set<String> relations = RELATIONS.get(i).apply(this);
+            if (relationCounts == null) {
+                relations.removeAll(RELATIONS.get(i).apply(c));
+                continue;
+            }
+            Map<String, Integer> counts = relationCounts.get(i);
+            for (String r : RELATIONS.get(i).apply(c)) {
+                if (counts.merge(r, -1, Integer::sum) == 0) {
+                    counts.remove(r);
+                    relations.remove(r);
+                }
+            }
+        }
+    }
+
+    private void count(TypeModel c, int delta) {
+        for (int i = 0; i < RELATIONS.size(); i++) {
+            Map<String, Integer> counts = relationCounts.get(i);
+            for (String r : RELATIONS.get(i).apply(c)) {
+                counts.merge(r, delta, Integer::sum);
+            }
+        }
+    }
+
+    // How many fields and methods the contributions in effect of the files before source's add up to.
+    private int[] membersBefore(Path source) {
+        int[] before = new int[2];
+        for (TypeModel c : contributions.headMap(source, false).values()) {
+            if (inEffect(c)) {
+                before[0] += c.fields.size();
+                before[1] += c.methods.size();
+            }
+        }
+        return before;
+    }
+
+    private void updateKind() {
+        if (declaration != null) {
+            kind = declaration.kind;
+        } else if (!contributions.isEmpty()) {
+            kind = contributions.firstEntry().getValue().kind;
+        }
+    }
+
+    // Relation names are canonicalised when a per-file type is frozen for the shared model.
+    private static Set<String> interned(Set<String> values) {
+        Set<String> copy = new LinkedHashSet<>();
+        synchronized (values) {
+            for (String v : values) {
+                copy.add(Symbols.intern(v));
+            }
+        }
+        return Collections.unmodifiableSet(copy);
+    }
+
+    private static boolean containsSame(List<?> list, Object member) {
+        for (Object o : list) {
+            if (o == member) {
+                return true;
+            }
+        }
+        return false;
     }
 }
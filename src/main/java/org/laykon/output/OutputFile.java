@@ -0,0 +1,147 @@
+package org.laykon.output;
+
+import org.laykon.util.Log;
+import org.laykon.util.Metrics;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * A generated file that is only replaced when its content changes. The content is compared with the
+ * existing file while it is being produced, and as long as they agree nothing is written at all, so renderers
+ * and file watchers downstream see no change. From the first difference on, the content goes to a temporary
+ * file beside the target that replaces it in one rename, so readers never see a partly written file.
+ */
+final class OutputFile extends OutputStream {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    interface Content {
+        void writeTo(Writer w) throws IOException;
+    }
+
+    private final Path target;
+    private final Path tmp;
+    // The existing file while the content still matches it, otherwise null.
+    private InputStream existing;
+    private long matched;
+    private byte[] compare = new byte[8 * 1024];
+    // The temporary file, once the content differs.
+    private OutputStream out;
+    private boolean committed;
+
+    private OutputFile(Path target) throws IOException {
+        this.target = target;
+        this.tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            existing = Files.newInputStream(target);
+        } catch (NoSuchFileException e) {
+            diverge();
+        }
+    }
+
+    /**
+     * Writes what {@code content} produces, as UTF-8, to {@code target} unless the file already holds exactly
+     * that. Returns whether the file was written. Should {@code content} fail, the file is left as it was.
+     */
+    static boolean write(Path target, Content content) throws IOException {
+        OutputFile file = new OutputFile(target);
+        try {
+            Writer w = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8), BUFFER_SIZE);
+            content.writeTo(w);
+            w.flush();
+            return file.commit();
+        } finally {
+            file.discard();
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (out == null) {
+            if (compare.length < len) {
+                compare = new byte[len];
+            }
+            int n = existing.readNBytes(compare, 0, len);
+            if (n == len && Arrays.mismatch(b, off, off + len, compare, 0, len) < 0) {
+                matched += len;
+                return;
+            }
+            diverge();
+        }
+        out.write(b, off, len);
+    }
+
+    // Switches to the temporary file, starting it with the part that matched so far.
+    private void diverge() throws IOException {
+        if (existing != null) {
+            existing.close();
+            existing = null;
+        }
+        out = new BufferedOutputStream(Files.newOutputStream(tmp), BUFFER_SIZE);
+        if (matched > 0) {
+            try (InputStream in = Files.newInputStream(target)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long left = matched;
+                while (left > 0) {
+                    int n = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+                    if (n < 0) {
+                        throw new IOException(target + " changed while being compared");
+                    }
+                    out.write(buffer, 0, n);
+                    left -= n;
+                }
+            }
+        }
+    }
+
+    private boolean commit() throws IOException {
+        if (out == null) {
+            if (existing.read() < 0) {
+                committed = true;
+                Log.debug(() -> "Unchanged, not rewritten: " + target);
+                Metrics.count("output.unchanged");
+                return false;
+            }
+            // The old file is longer.
+            diverge();
+        }
+        out.close();
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+        Metrics.count("output.written");
+        return true;
+    }
+
+    // Releases the files; without a commit the temporary file is removed and the target stays as it was.
+    private void discard() throws IOException {
+        if (existing != null) {
+            existing.close();
+        }
+        if (out != null && !committed) {
+            out.close();
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -1,84 +1,190 @@
 package org.laykon.output;
 
 import org.laykon.model.*;
-import org.laykon.util.Debug;
+import org.laykon.util.Log;
+import org.laykon.view.DiagramView;
 
-import java.io.BufferedWriter;
-import java.nio.file.Files;
+import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 public class PlantUmlWriter {
 
     public static void write(Path output, ModelRepository repo) throws Exception {
-        try (BufferedWriter w = Files.newBufferedWriter(output)) {
-            w.write("@startuml\n\n");
-
-            for (TypeModel t : repo.all()) {
-                Debug.log("Writing type " + t.name + " (" + t.kind + ")");
-                w.write(typeKeyword(t) + " " + t.name);
-                if (t.fields.isEmpty() && t.methods.isEmpty()) {
-                    w.write("\n");
-                    continue;
-                }
+        write(output, DiagramView.of(repo));
+    }
 
-                w.write(" {\n");
-                for (FieldModel f : t.fields) {
-                    if (f.type == null || f.type.isBlank()) {
-                        Debug.log("  field " + f.name);
-                        w.write("  " + f.name + "\n");
-                    } else {
-                        Debug.log("  field " + f.name + " : " + f.type);
-                        w.write("  " + f.name + " : " + f.type + "\n");
-                    }
+    /**
+     * Writes the diagram of {@code view} to {@code output}, leaving the file untouched when it already holds
+     * the same diagram.
+     */
+    public static void write(Path output, DiagramView view) throws Exception {
+        OutputFile.write(output, w -> write(w, view));
+    }
+
+    public static void write(Writer w, ModelRepository repo) throws IOException {
+        write(w, DiagramView.of(repo));
+    }
+
+    /**
+     * Streams the diagram of {@code view} to {@code w}. Relations to types the view leaves out are not drawn.
+     * Every line is emitted piece by piece straight into the writer,
+     * so no intermediate strings are built; debug messages are only composed when debug is enabled.
+     */
+    public static void write(Writer w, DiagramView view) throws IOException {
+        w.write("@startuml\n\n");
+        writeBody(w, view);
+        w.write("\n@enduml\n");
+    }
+
+    /**
+     * The types and relations of {@code view}, without the start and end markers.
+     */
+    static void writeBody(Writer w, DiagramView view) throws IOException {
+        ModelRepository repo = view.repository();
+        // One snapshot of the types serves all three sections.
+        TypeModel[] types = view.types().toArray(new TypeModel[0]);
+        boolean debug = Log.isEnabled(Log.Level.TRACE);
+
+        // Dots are part of names such as java.util or Map.Entry; only :: separates a namespace.
+        for (TypeModel t : types) {
+            if (t.name.indexOf('.') >= 0) {
+                w.write("set namespaceSeparator ::\n\n");
+                break;
+            }
+        }
+
+        for (TypeModel t : types) {
+            if (debug) {
+                Log.trace(() -> "Writing type " + t.name + " (" + t.kind() + ")");
+            }
+            w.write(typeKeyword(t));
+            w.write(' ');
+            w.write(id(t));
+            if (t.fields.isEmpty() && t.methods.isEmpty()) {
+                w.write('\n');
+                continue;
+            }
+
+            w.write(" {\n");
+            for (FieldModel f : t.fields) {
+                boolean untyped = f.type == null || f.type.isBlank();
+                if (debug) {
+                    Log.trace(() -> "  field " + f.name + (untyped ? "" : " : " + f.type));
                 }
-                for (MethodModel m : t.methods) {
-                    Debug.log("  method " + m.name + "(" + String.join(", ", m.parameters) + ")" +
-                            ("void".equalsIgnoreCase(m.returnType) ? "" : " : " + m.returnType));
-                    w.write("  " + m.name + "(" + String.join(", ", m.parameters) + ")");
-                    if (!"void".equalsIgnoreCase(m.returnType)) {
-                        w.write(" : " + m.returnType);
-                    }
-                    w.write("\n");
+                w.write("  ");
+                w.write(f.name);
+                if (!untyped) {
+                    w.write(" : ");
+                    w.write(f.type);
                 }
-                w.write("}\n");
+                w.write('\n');
             }
+            for (MethodModel m : t.methods) {
+                boolean returnsValue = !"void".equalsIgnoreCase(m.returnType);
+                if (debug) {
+                    Log.trace(() -> "  method " + m.name + "(" + String.join(", ", m.parameters) + ")" +
+                            (returnsValue ? " : " + m.returnType : ""));
+                }
+                w.write("  ");
+                w.write(m.name);
+                w.write('(');
+                writeParameters(w, m.parameters);
+                w.write(')');
+                if (returnsValue) {
+                    w.write(" : ");
+                    w.write(m.returnType);
+                }
+                w.write('\n');
+            }
+            w.write("}\n");
+        }
 
-            w.write("\n");
+        w.write('\n');
 
-            for (TypeModel t : repo.all()) {
+        if (view.showsInheritance()) {
+            for (TypeModel t : types) {
                 for (String e : t.extendsTypes) {
-                    Debug.log("Inheritance " + e + " <|-- " + t.name);
-                    w.write(e + " <|-- " + t.name + "\n");
+                    writeInheritance(w, view, t, e, " <|-- ", debug);
                 }
                 for (String i : t.implementsTypes) {
-                    Debug.log("Implements " + i + " <|.. " + t.name);
-                    w.write(i + " <|.. " + t.name + "\n");
+                    writeInheritance(w, view, t, i, " <|.. ", debug);
                 }
             }
+        }
 
-            w.write("\n");
+        w.write('\n');
 
-            for (TypeModel t : repo.all()) {
+        // A type referenced under several spellings (Foo, pkg.Foo, Foo<Bar>) is drawn once.
+        Set<TypeModel> targets = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (view.showsDependencies()) {
+            for (TypeModel t : types) {
+                targets.clear();
                 for (String d : t.dependencies) {
-                    if (repo.contains(d)) {
-                        Debug.log("Dependency " + t.name + " ..> " + d);
-                        w.write(t.name + " ..> " + d + "\n");
+                    TypeModel target = repo.resolve(d, t);
+                    if (target != null && target != t && view.contains(target) && targets.add(target)) {
+                        if (debug) {
+                            Log.trace(() -> "Dependency " + t.name + " ..> " + target.name);
+                        }
+                        writeRelation(w, id(t), " ..> ", id(target));
                     }
                 }
             }
+        }
+    }
+
+    /**
+     * Draws {@code t} as a subtype of {@code reference}, unless the reference names a type the view leaves
+     * out. A supertype the model does not know, like a library class, is drawn under the name written.
+     */
+    private static void writeInheritance(Writer w, DiagramView view, TypeModel t, String reference, String arrow,
+                                         boolean debug) throws IOException {
+        TypeModel target = view.repository().resolve(reference, t);
+        if (target != null && !view.contains(target)) {
+            return;
+        }
+        if (debug) {
+            Log.trace(() -> "Inheritance " + reference + arrow + t.name);
+        }
+        writeRelation(w, target == null ? reference : id(target), arrow, id(t));
+    }
+
+    /**
+     * The PlantUML name of {@code t}: its namespace and local name joined by {@code ::}, the namespace
+     * separator the diagram declares, so PlantUML groups types into a package per namespace.
+     */
+    static String id(TypeModel t) {
+        return t.namespace.isEmpty() ? t.name : t.namespace + "::" + t.localName();
+    }
 
-            w.write("\n@enduml\n");
+    private static void writeParameters(Writer w, List<String> parameters) throws IOException {
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                w.write(", ");
+            }
+            w.write(parameters.get(i));
         }
     }
 
+    static void writeRelation(Writer w, String from, String arrow, String to) throws IOException {
+        w.write(from);
+        w.write(arrow);
+        w.write(to);
+        w.write('\n');
+    }
+
     private static String typeKeyword(TypeModel t) {
-        if (t.kind == TypeKind.INTERFACE) {
+        if (t.kind() == TypeKind.INTERFACE) {
             return "interface";
         }
-        if (t.kind == TypeKind.STRUCT) {
+        if (t.kind() == TypeKind.STRUCT) {
             return "struct";
         }
-        if (t.kind == TypeKind.ENUM) {
+        if (t.kind() == TypeKind.ENUM) {
             return "enum";
         }
         return "class";
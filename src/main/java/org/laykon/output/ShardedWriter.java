@@ -0,0 +1,237 @@
+package org.laykon.output;
+
+import org.laykon.model.ModelRepository;
+import org.laykon.model.TypeModel;
+import org.laykon.util.Log;
+import org.laykon.view.DiagramView;
+import org.laykon.view.Partitions;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Writes a view as several smaller diagrams, one per partition, plus an index diagram with one node per
+ * partition. For {@code diagram.puml} the index goes to that file and the partitions to
+ * {@code diagram/<partition>.puml}.
+ * <p>
+ * Relations between partitions are summarised rather than drawn type to type: a partition's diagram shows
+ * each other partition it refers to as a single node, with one edge per referring type labelled with the
+ * number of references, and the index has one edge per pair of partitions. Nodes link to the rendered
+ * {@code .svg} of their partition. Partitions are written in parallel.
+ */
+public final class ShardedWriter {
+
+    public enum Mode {
+        PACKAGE, CLUSTER
+    }
+
+    // Lists the partitions written last time, so only those are ever deleted.
+    private static final String MANIFEST = ".partitions";
+
+    private final Mode mode;
+    private final int clusterSize;
+    private final ForkJoinPool pool;
+
+    public ShardedWriter(Mode mode, int clusterSize, ForkJoinPool pool) {
+        this.mode = mode;
+        this.clusterSize = clusterSize;
+        this.pool = pool;
+    }
+
+    public void write(Path index, DiagramView view) throws Exception {
+        Map<String, DiagramView> parts = mode == Mode.PACKAGE
+                ? Partitions.byPackage(view)
+                : Partitions.byCluster(view, clusterSize);
+
+        String stem = stem(index);
+        Path dir = index.resolveSibling(stem);
+        Files.createDirectories(dir);
+
+        List<Shard> shards = new ArrayList<>(parts.size());
+        Set<String> fileNames = new HashSet<>();
+        Map<TypeModel, Integer> shardOf = new IdentityHashMap<>();
+        for (Map.Entry<String, DiagramView> part : parts.entrySet()) {
+            Shard shard = new Shard(shards.size(), part.getKey(), fileName(part.getKey(), fileNames), part.getValue());
+            shards.add(shard);
+            for (TypeModel t : shard.view.types()) {
+                shardOf.put(t, shard.id);
+            }
+        }
+        Log.debug(() -> "Writing " + shards.size() + " partitions to " + dir);
+
+        List<ForkJoinTask<Map<Integer, Integer>>> tasks = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            tasks.add(pool.submit(() -> writeShard(dir.resolve(shard.fileName + ".puml"), shard, shards, shardOf)));
+        }
+        List<Map<Integer, Integer>> references = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<Map<Integer, Integer>> task : tasks) {
+            references.add(task.join());
+        }
+
+        OutputFile.write(index, w -> {
+            w.write("@startuml\n\n");
+            for (Shard shard : shards) {
+                writeShardNode(w, shard, stem + "/");
+            }
+            w.write('\n');
+            for (Shard shard : shards) {
+                for (Map.Entry<Integer, Integer> e : references.get(shard.id).entrySet()) {
+                    writeSummaryEdge(w, alias(shard), alias(shards.get(e.getKey())), e.getValue());
+                }
+            }
+            w.write("\n@enduml\n");
+        });
+
+        removeStale(dir, shards, fileNames);
+    }
+
+    /**
+     * Deletes the partitions an earlier run wrote that this run did not, as listed in the directory's
+     * manifest, and records this run's partitions in it. Other files are never deleted, only reported, as they
+     * may be diagrams of the user's own.
+     */
+    private static void removeStale(Path dir, List<Shard> shards, Set<String> fileNames) throws IOException {
+        Path manifest = dir.resolve(MANIFEST);
+        Set<String> written = new HashSet<>();
+        if (Files.isRegularFile(manifest)) {
+            written.addAll(Files.readAllLines(manifest, StandardCharsets.UTF_8));
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.puml")) {
+            for (Path p : files) {
+                String name = p.getFileName().toString();
+                if (fileNames.contains(name.substring(0, name.length() - ".puml".length()).toLowerCase(Locale.ROOT))) {
+                    continue;
+                }
+                if (written.contains(name)) {
+                    Log.debug(() -> "Removing stale partition " + p);
+                    Files.delete(p);
+                } else {
+                    Log.warn(() -> "Keeping " + p + ", which is not a partition of this diagram");
+                }
+            }
+        }
+        OutputFile.write(manifest, w -> {
+            for (Shard shard : shards) {
+                w.write(shard.fileName);
+                w.write(".puml\n");
+            }
+        });
+    }
+
+    /**
+     * Writes one partition and returns how many of its references point into each other partition.
+     */
+    private static Map<Integer, Integer> writeShard(Path file, Shard shard, List<Shard> shards,
+                                                    Map<TypeModel, Integer> shardOf) throws IOException {
+        ModelRepository repo = shard.view.repository();
+        Map<Integer, Integer> references = new TreeMap<>();
+        // Per referring type, references per other partition, in order of appearance.
+        Map<TypeModel, Map<Integer, Integer>> outgoing = new LinkedHashMap<>();
+        Set<TypeModel> targets = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (TypeModel t : shard.view.types()) {
+            targets.clear();
+            List<Collection<String>> relations = new ArrayList<>(3);
+            if (shard.view.showsInheritance()) {
+                relations.add(t.extendsTypes);
+                relations.add(t.implementsTypes);
+            }
+            if (shard.view.showsDependencies()) {
+                relations.add(t.dependencies);
+            }
+            for (Collection<String> refs : relations) {
+                for (String ref : refs.toArray(new String[0])) {
+                    TypeModel target = repo.resolve(ref, t);
+                    Integer other = target == null ? null : shardOf.get(target);
+                    if (other == null || other == shard.id || !targets.add(target)) {
+                        continue;
+                    }
+                    references.merge(other, 1, Integer::sum);
+                    outgoing.computeIfAbsent(t, k -> new LinkedHashMap<>()).merge(other, 1, Integer::sum);
+                }
+            }
+        }
+
+        OutputFile.write(file, w -> {
+            w.write("@startuml\n\n");
+            PlantUmlWriter.writeBody(w, shard.view);
+            if (!outgoing.isEmpty()) {
+                w.write('\n');
+                for (Integer other : references.keySet()) {
+                    writeShardNode(w, shards.get(other), "");
+                }
+                w.write('\n');
+                for (Map.Entry<TypeModel, Map<Integer, Integer>> e : outgoing.entrySet()) {
+                    for (Map.Entry<Integer, Integer> count : e.getValue().entrySet()) {
+                        writeSummaryEdge(w, PlantUmlWriter.id(e.getKey()), alias(shards.get(count.getKey())),
+                                count.getValue());
+                    }
+                }
+            }
+            w.write("\n@enduml\n");
+        });
+        return references;
+    }
+
+    private static void writeShardNode(Writer w, Shard shard, String linkPrefix) throws IOException {
+        w.write("class \"");
+        w.write(shard.name);
+        w.write("\" as ");
+        w.write(alias(shard));
+        w.write(" <<");
+        w.write(Integer.toString(shard.view.types().size()));
+        w.write(shard.view.types().size() == 1 ? " type" : " types");
+        w.write(">> [[");
+        w.write(linkPrefix);
+        w.write(shard.fileName);
+        w.write(".svg]]\n");
+    }
+
+    private static void writeSummaryEdge(Writer w, String from, String to, int count) throws IOException {
+        w.write(from);
+        w.write(" ..> ");
+        w.write(to);
+        w.write(" : ");
+        w.write(Integer.toString(count));
+        w.write('\n');
+    }
+
+    private static String alias(Shard shard) {
+        return "partition_" + shard.id;
+    }
+
+    private static String stem(Path index) {
+        String name = index.getFileName().toString();
+        return name.endsWith(".puml") ? name.substring(0, name.length() - ".puml".length()) : name + "-partitions";
+    }
+
+    // Unique across partitions, ignoring case for case-insensitive file systems; taken holds lower-case names.
+    private static String fileName(String partition, Set<String> taken) {
+        String base = partition.replaceAll("[^A-Za-z0-9._-]", "_");
+        String name = base;
+        for (int n = 2; !taken.add(name.toLowerCase(Locale.ROOT)); n++) {
+            name = base + "-" + n;
+        }
+        return name;
+    }
+
+    private static final class Shard {
+        private final int id;
+        private final String name;
+        private final String fileName;
+        private final DiagramView view;
+
+        private Shard(int id, String name, String fileName, DiagramView view) {
+            this.id = id;
+            this.name = name;
+            this.fileName = fileName;
+            this.view = view;
+        }
+    }
+}
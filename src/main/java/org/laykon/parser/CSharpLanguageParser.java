@@ -1,38 +1,23 @@
 package org.laykon.parser;
 
 import org.laykon.model.*;
-import org.laykon.util.Debug;
+import org.laykon.source.SourceFile;
+import org.laykon.util.Log;
+import org.laykon.util.Metrics;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class CSharpLanguageParser implements LanguageParser {
-    private static final Pattern CLASS_PATTERN = Pattern.compile(
-            "\\s*(?:public|private|protected|internal|abstract|sealed|static|partial)?\\s*" +
-                    "(class|interface|struct|record|enum)\\s+(\\w+)\\s*(?:<[^>]*>)?\\s*(?::\\s*([^{]+))?"
-    );
-
-    private static final Pattern METHOD_PATTERN = Pattern.compile(
-            "(?m)^\\s*(?:public|private|protected|internal|static|virtual|override|abstract|async|sealed|new|extern|unsafe|partial)\\s*" +
-                    "(?:public|private|protected|internal|static|virtual|override|abstract|async|sealed|new|extern|unsafe|partial\\s+)*" +
-                    "([\\w<>,\\.\\[\\]\\?]+(?:\\s+[\\w<>,\\.\\[\\]\\?]+)*)\\s+(\\w+)\\s*\\(([^)]*)\\)"
-    );
-    private static final Pattern CONSTRUCTOR_PATTERN = Pattern.compile(
-            "(?m)^\\s*(?:public|private|protected|internal|static|unsafe|extern)\\s*(\\w+)\\s*\\(([^)]*)\\)"
-    );
-
-    private static final Pattern FIELD_PROPERTY_PATTERN = Pattern.compile(
-            "\\s*(?:public|private|protected|internal|static|readonly|const|volatile)?\\s*" +
-                    "([\\w<>,\\s\\.\\[\\]\\?]++)\\s++(\\w+)\\s*(?:=\\s*[^;]*+)?\\s*;"
-    );
-
-    private static final Pattern PROPERTY_PATTERN = Pattern.compile(
-            "\\s*(?:public|private|protected|internal|static|virtual|override|abstract)?\\s*" +
-                    "([\\w<>,\\s\\.\\[\\]\\?]++)\\s++(\\w+)\\s*\\{[^}]*+\\}\\s*(?:=\\s*[^;]*+)?\\s*;?"
+    private static final String[] MODIFIERS = {
+            "public", "private", "protected", "internal", "static", "virtual", "override", "abstract",
+            "async", "sealed", "new", "extern", "unsafe", "partial", "readonly", "const", "volatile",
+            "required", "fixed", "file", "event", "ref"
+    };
+    private static final String[] PARAM_MODIFIERS = {
+            "ref", "out", "in", "params", "this", "scoped", "readonly"
+    };
+    private static final Set<String> PRIMITIVES = Set.of(
+            "int", "long", "short", "byte", "float", "double", "decimal", "bool", "char", "string", "object", "void"
     );
     private static final Set<String> GENERIC_CONTAINERS = Set.of(
             "List", "IList", "ICollection", "IEnumerable", "IReadOnlyList", "IReadOnlyCollection",
@@ -46,496 +31,422 @@ public class CSharpLanguageParser implements LanguageParser {
     }
 
     @Override
-    public void parse(Path file, ModelRepository repo) {
-        try {
-            String content = Files.readString(file);
-            Debug.log("C# parse start: " + file + " (" + content.length() + " chars)");
-            content = removeComments(content);
-
-            Matcher typeMatcher = CLASS_PATTERN.matcher(content);
-            int lastIndex = 0;
-            int typeCount = 0;
-
-            while (typeMatcher.find(lastIndex)) {
-                String typeKeyword = typeMatcher.group(1);
-                String typeName = typeMatcher.group(2);
-                String inheritance = typeMatcher.group(3);
-                typeCount++;
-                Debug.log("C# type " + typeName + " at " + typeMatcher.start() + "-" + typeMatcher.end());
-
-                TypeKind kind = TypeKind.CLASS;
-                if ("interface".equals(typeKeyword)) {
-                    kind = TypeKind.INTERFACE;
-                } else if ("enum".equals(typeKeyword)) {
-                    kind = TypeKind.ENUM;
-                } else if ("struct".equals(typeKeyword) || "record".equals(typeKeyword)) {
-                    kind = TypeKind.STRUCT;
-                }
-
-                TypeModel type = repo.getOrCreate(typeName, kind);
-
-                if (inheritance != null && !inheritance.trim().isEmpty()) {
-                    String[] parents = inheritance.split(",");
-                    for (String parent : parents) {
-                        parent = parent.trim();
-                        if (!parent.isEmpty()) {
-                            if (kind == TypeKind.INTERFACE || parent.startsWith("I") &&
-                                    Character.isUpperCase(parent.charAt(1))) {
-                                type.extendsTypes.add(parent);
-                            } else {
-                                if (type.extendsTypes.isEmpty() && kind != TypeKind.INTERFACE) {
-                                    type.extendsTypes.add(parent);
-                                } else {
-                                    type.implementsTypes.add(parent);
-                                }
-                            }
-                        }
-                    }
-                }
+    public String version() {
+        return "4";
+    }
 
-                int bodyStart = findOpeningBrace(content, typeMatcher.end());
-                if (bodyStart > 0) {
-                    int bodyEnd = findMatchingBrace(content, bodyStart);
-                    if (bodyEnd > 0) {
-                        String body = content.substring(bodyStart + 1, bodyEnd);
-                        Debug.log("C# body for " + typeName + " at " + bodyStart + "-" + bodyEnd +
-                                " (" + body.length() + " chars)");
-                        if (kind == TypeKind.ENUM) {
-                            parseEnumBody(body, type);
-                        } else {
-                            parseTypeBody(body, type);
-                        }
-                        lastIndex = bodyEnd;
-                        continue;
+    @Override
+    public void parse(SourceFile source, ModelRepository repo) {
+        CharSequence content = source.text();
+        Log.debug(() -> "C# parse start: " + source.path() + " (" + content.length() + " chars)");
+        long start = Metrics.start();
+        TokenStream tokens = CSharpLexer.tokenize(content);
+        Metrics.stop(Metrics.Phase.LEX, start);
+
+        // Enclosing namespaces, innermost last, with the token index each one ends at.
+        List<String> namespaces = new ArrayList<>();
+        List<Integer> namespaceEnds = new ArrayList<>();
+        int typeCount = 0;
+        int i = 0;
+        while (i < tokens.size()) {
+            while (!namespaceEnds.isEmpty() && i >= namespaceEnds.get(namespaceEnds.size() - 1)) {
+                namespaces.remove(namespaces.size() - 1);
+                namespaceEnds.remove(namespaceEnds.size() - 1);
+            }
+            if (tokens.is(i, "namespace") && tokens.isWord(i + 1)) {
+                String outer = namespaces.isEmpty() ? "" : namespaces.get(namespaces.size() - 1);
+                StringBuilder name = new StringBuilder(outer);
+                int j = i + 1;
+                while (true) {
+                    name.append(name.length() > 0 ? "." : "").append(tokens.text(j));
+                    if (!tokens.is(j + 1, '.') || !tokens.isWord(j + 2)) {
+                        break;
                     }
+                    j += 2;
                 }
-                lastIndex = typeMatcher.end();
+                j++;
+                namespaces.add(name.toString());
+                // A file-scoped namespace covers the rest of the file.
+                namespaceEnds.add(tokens.is(j, '{') ? tokens.skipGroup(j, tokens.size()) : tokens.size());
+                i = j + 1;
+            } else if (isTypeDeclaration(tokens, i)) {
+                String namespace = namespaces.isEmpty() ? "" : namespaces.get(namespaces.size() - 1);
+                i = parseType(tokens, i, repo, namespace, null);
+                typeCount++;
+            } else {
+                i++;
             }
-            Debug.log("C# parse done: " + file + " (types: " + typeCount + ")");
+        }
+        int types = typeCount;
+        Log.debug(() -> "C# parse done: " + source.path() + " (tokens: " + tokens.size() + ", types: " + types + ")");
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+    private boolean isTypeDeclaration(TokenStream t, int i) {
+        if (!t.isWord(i) || i > 0 && (t.is(i - 1, ':') || t.is(i - 1, ',') || t.is(i - 1, '.'))) {
+            return false;
         }
+        if (t.is(i, "record")) {
+            return t.isWord(i + 1) && !t.is(i + 1, "where");
+        }
+        return (t.is(i, "class") || t.is(i, "interface") || t.is(i, "struct") || t.is(i, "enum"))
+                && t.isWord(i + 1) && !t.is(i + 1, "where");
     }
 
-    private void parseTypeBody(String body, TypeModel type) {
-        Debug.log("C# parse body for " + type.name);
-        String bodyWithoutMethodBodies = stripMethodBodies(body);
+    private int parseType(TokenStream t, int keyword, ModelRepository repo, String namespace, TypeModel outer) {
+        TypeKind kind = TypeKind.CLASS;
+        if (t.is(keyword, "interface")) {
+            kind = TypeKind.INTERFACE;
+        } else if (t.is(keyword, "enum")) {
+            kind = TypeKind.ENUM;
+        } else if (t.is(keyword, "struct") || t.is(keyword, "record")) {
+            kind = TypeKind.STRUCT;
+        }
 
-        Set<String> fieldNames = new HashSet<>();
-        Set<String> methodKeys = new HashSet<>();
+        int i = keyword + 1;
+        if (t.is(keyword, "record") && (t.is(i, "class") || t.is(i, "struct"))) {
+            i++;
+        }
+        String typeName = t.text(i++);
+        if (t.is(i, '<')) {
+            int end = skipAngles(t, i, t.size());
+            i = end < 0 ? i : end;
+        }
+        if (t.is(i, '(')) {
+            i = t.skipGroup(i, t.size());
+        }
 
-        int fieldCount = 0;
-        int propCount = 0;
-        String[] lines = bodyWithoutMethodBodies.split("\\R");
-        for (String raw : lines) {
-            String line = raw.trim();
-            if (line.isEmpty()) {
-                continue;
-            }
-            if (line.contains("{") && line.contains("}") && line.contains("get")) {
-                String head = line.substring(0, line.indexOf('{')).trim();
-                String[] typeName = extractTypeAndName(head);
-                if (typeName != null) {
-                    String propType = typeName[0];
-                    String propName = typeName[1];
-                    if (fieldNames.add(propName)) {
-                        type.fields.add(new FieldModel(propName, propType));
-                        propCount++;
-                    }
-                    addDependencies(propType, type);
-                }
-                continue;
-            }
-            if (line.endsWith(";") && !line.contains("(") && !line.contains("{")) {
-                String head = line.substring(0, line.length() - 1).trim();
-                int assignIdx = head.indexOf('=');
-                if (assignIdx >= 0) {
-                    head = head.substring(0, assignIdx).trim();
-                }
-                String[] typeName = extractTypeAndName(head);
-                if (typeName != null) {
-                    String fieldType = typeName[0];
-                    String fieldName = typeName[1];
-                    if (fieldNames.add(fieldName)) {
-                        type.fields.add(new FieldModel(fieldName, fieldType));
-                        fieldCount++;
-                    }
-                    addDependencies(fieldType, type);
-                }
-            }
+        String localName = outer == null ? typeName : outer.localName() + "." + typeName;
+        TypeModel type = repo.getOrCreate(namespace, localName, kind);
+        if (t.is(keyword - 1, "partial")) {
+            type.markPartial();
         }
-        Debug.log("C# fields found: " + fieldCount);
-        Debug.log("C# properties found: " + propCount);
-
-        Matcher methodMatcher = METHOD_PATTERN.matcher(body);
-        int methodCount = 0;
-        while (methodMatcher.find()) {
-            methodCount++;
-            String returnType = cleanReturnType(methodMatcher.group(1).trim());
-            String methodName = methodMatcher.group(2).trim();
-            String paramsStr = methodMatcher.group(3).trim();
-            Debug.log("C# method " + type.name + "." + methodName + "()");
-
-            List<String> params = new ArrayList<>();
-            if (!paramsStr.isEmpty()) {
-                String[] paramArray = paramsStr.split(",");
-                for (String param : paramArray) {
-                    param = param.trim();
-                    if (!param.isEmpty()) {
-                        String paramType = extractParamType(param);
-                        if (!paramType.isEmpty()) {
-                            params.add(paramType);
-                            addDependencies(paramType, type);
-                        }
-                    }
-                }
-            }
+        Log.trace(() -> "C# type " + typeName + " at " + t.start(keyword));
 
-            if (methodName.equals(type.name)) {
-                returnType = "void";
-            }
-            String methodKey = methodName + "|" + String.join(",", params);
-            if (methodKeys.add(methodKey)) {
-                type.methods.add(new MethodModel(methodName, returnType, params));
-            }
+        if (t.is(i, ':')) {
+            i = parseBaseList(t, i + 1, type, kind);
+        }
+        while (i < t.size() && !t.is(i, '{') && !t.is(i, ';')) {
+            i = t.is(i, '(') || t.is(i, '[') ? t.skipGroup(i, t.size()) : i + 1;
+        }
+        if (i >= t.size() || t.is(i, ';')) {
+            return i + 1;
+        }
 
-            addDependencies(returnType, type);
+        int bodyEnd = t.skipGroup(i, t.size()) - 1;
+        int bodyStart = i;
+        Log.trace(() -> "C# body for " + typeName + " at tokens " + bodyStart + "-" + bodyEnd);
+        if (kind == TypeKind.ENUM) {
+            parseEnumBody(t, i + 1, bodyEnd, type);
+        } else {
+            parseTypeBody(t, i + 1, bodyEnd, type, namespace, repo);
         }
-        Debug.log("C# methods found: " + methodCount);
+        return bodyEnd + 1;
+    }
 
-        Matcher ctorMatcher = CONSTRUCTOR_PATTERN.matcher(body);
-        while (ctorMatcher.find()) {
-            String ctorName = ctorMatcher.group(1).trim();
-            if (!ctorName.equals(type.name)) {
-                continue;
+    private int parseBaseList(TokenStream t, int i, TypeModel type, TypeKind kind) {
+        while (i < t.size()) {
+            int end = typeEnd(t, i, t.size());
+            if (end < 0) {
+                break;
             }
-            String paramsStr = ctorMatcher.group(2).trim();
-            Debug.log("C# ctor " + type.name + "." + ctorName + "()");
-
-            List<String> params = new ArrayList<>();
-            if (!paramsStr.isEmpty()) {
-                String[] paramArray = paramsStr.split(",");
-                for (String param : paramArray) {
-                    param = param.trim();
-                    if (!param.isEmpty()) {
-                        String paramType = extractParamType(param);
-                        if (!paramType.isEmpty()) {
-                            params.add(paramType);
-                            addDependencies(paramType, type);
-                        }
-                    }
-                }
+            String parent = t.text(i, end);
+            if (kind == TypeKind.INTERFACE || parent.length() > 1 && parent.startsWith("I") &&
+                    Character.isUpperCase(parent.charAt(1))) {
+                type.extendsTypes.add(parent);
+            } else if (type.extendsTypes.isEmpty()) {
+                type.extendsTypes.add(parent);
+            } else {
+                type.implementsTypes.add(parent);
             }
-
-            String methodKey = ctorName + "|" + String.join(",", params);
-            if (methodKeys.add(methodKey)) {
-                type.methods.add(new MethodModel(ctorName, "void", params));
+            i = end;
+            if (t.is(i, '(')) {
+                i = t.skipGroup(i, t.size());
             }
+            if (!t.is(i, ',')) {
+                break;
+            }
+            i++;
         }
-
-        extractMembersFromLines(bodyWithoutMethodBodies, type, fieldNames, methodKeys);
+        return i;
     }
 
-    private void extractMembersFromLines(String body, TypeModel type, Set<String> fieldNames, Set<String> methodKeys) {
-        String[] lines = body.split("\\R");
-        for (String raw : lines) {
-            String line = raw.trim();
-            if (line.isEmpty()) {
+    private void parseTypeBody(TokenStream t, int from, int to, TypeModel type, String namespace,
+                               ModelRepository repo) {
+        Set<String> fieldNames = new HashSet<>();
+        Set<String> methodKeys = new HashSet<>();
+
+        int i = from;
+        while (i < to) {
+            if (t.is(i, ';')) {
+                i++;
                 continue;
             }
-            line = stripAttributes(line);
-            if (line.isEmpty()) {
-                continue;
+            while (i < to && t.is(i, '[')) {
+                i = t.skipGroup(i, to);
             }
-            if (line.startsWith("class ") || line.startsWith("interface ") || line.startsWith("struct ")
-                    || line.startsWith("enum ") || line.startsWith("record ")) {
-                continue;
+            while (i < to && isOneOf(t, i, MODIFIERS)) {
+                i++;
+            }
+            if (i >= to) {
+                break;
+            }
+            if (isTypeDeclaration(t, i)) {
+                i = parseType(t, i, repo, namespace, type);
+            } else {
+                i = parseMember(t, i, to, type, fieldNames, methodKeys);
             }
+        }
+        Log.trace(() -> "C# members of " + type.name + ": " + type.fields.size() + " fields, " +
+                type.methods.size() + " methods");
+    }
 
-            if (line.contains("{") && line.contains("}") && line.contains("get")) {
-                String head = line.substring(0, line.indexOf('{')).trim();
-                String[] typeName = extractTypeAndName(head);
-                if (typeName != null) {
-                    String propType = typeName[0];
-                    String propName = typeName[1];
-                    if (fieldNames.add(propName)) {
-                        type.fields.add(new FieldModel(propName, propType));
-                    }
-                    addDependencies(propType, type);
+    private int parseMember(TokenStream t, int i, int to, TypeModel type,
+                            Set<String> fieldNames, Set<String> methodKeys) {
+        if (t.is(i, "delegate") || t.is(i, '~') || t.is(i, "implicit") || t.is(i, "explicit")) {
+            return skipMember(t, i, to);
+        }
+        if (t.is(i, type.simpleName()) && t.is(i + 1, '(')) {
+            int close = t.skipGroup(i + 1, to);
+            List<String> params = parseParameters(t, i + 2, close - 1, type);
+            Log.trace(() -> "C# ctor " + type.name + "." + type.simpleName() + "()");
+            addMethod(type, methodKeys, type.simpleName(), "void", params, t.line(i));
+            return skipMember(t, close, to);
+        }
+
+        int typeEnd = typeEnd(t, i, to);
+        if (typeEnd < 0 || !t.isWord(typeEnd)) {
+            return skipMember(t, i, to);
+        }
+        int nameIndex = typeEnd;
+        int n = typeEnd + 1;
+        while (true) {
+            int k = n;
+            if (t.is(k, '<')) {
+                int end = skipAngles(t, k, to);
+                if (end < 0) {
+                    break;
                 }
+                k = end;
+            }
+            if (t.is(k, '.') && t.isWord(k + 1)) {
+                nameIndex = k + 1;
+                n = k + 2;
                 continue;
             }
+            n = k;
+            break;
+        }
+        if (t.is(nameIndex, "this") || t.is(nameIndex, "operator")) {
+            return skipMember(t, n, to);
+        }
 
-            if (line.endsWith(";")) {
-                int parenIdx = line.indexOf('(');
-                int assignIdx = line.indexOf('=');
-                int braceIdx = line.indexOf('{');
-
-                boolean looksLikeField = parenIdx < 0 || (assignIdx >= 0 && assignIdx < parenIdx) ||
-                        (braceIdx >= 0 && braceIdx < parenIdx);
+        String name = t.text(nameIndex);
+        String memberType = t.text(i, typeEnd);
 
-                if (looksLikeField) {
-                    String head = line.substring(0, line.length() - 1).trim();
-                    if (assignIdx >= 0) {
-                        head = head.substring(0, assignIdx).trim();
-                    }
-                    if (braceIdx >= 0) {
-                        head = head.substring(0, braceIdx).trim();
-                    }
-                    String[] typeName = extractTypeAndName(head);
-                    if (typeName != null) {
-                        String fieldType = typeName[0];
-                        String fieldName = typeName[1];
-                        if (fieldNames.add(fieldName)) {
-                            type.fields.add(new FieldModel(fieldName, fieldType));
-                        }
-                        addDependencies(fieldType, type);
-                    }
-                    continue;
-                }
+        if (t.is(n, '(')) {
+            int close = t.skipGroup(n, to);
+            List<String> params = parseParameters(t, n + 1, close - 1, type);
+            String returnType = name.equals(type.simpleName()) ? "void" : memberType;
+            Log.trace(() -> "C# method " + type.name + "." + name + "()");
+            addMethod(type, methodKeys, name, returnType, params, t.line(nameIndex));
+            addDependencies(returnType, type);
+            return skipMember(t, close, to);
+        }
+        if (t.is(n, '{') || t.is(n, "=>")) {
+            addField(type, fieldNames, name, memberType, t.line(nameIndex));
+            if (t.is(n, "=>")) {
+                return skipMember(t, n, to);
             }
-
-            if (line.contains("(") && line.contains(")") && line.endsWith(";")) {
-                int open = line.indexOf('(');
-                int close = line.lastIndexOf(')');
-                int assignIdx = line.indexOf('=');
-                if (assignIdx >= 0 && assignIdx < open) {
-                    continue;
+            int after = t.skipGroup(n, to);
+            return t.is(after, '=') ? skipMember(t, after, to) : after;
+        }
+        if (t.is(n, '=') || t.is(n, ';') || t.is(n, ',') || t.is(n, '[')) {
+            addField(type, fieldNames, name, memberType, t.line(nameIndex));
+            int j = n;
+            while (j < to) {
+                if (t.is(j, ';')) {
+                    return j + 1;
                 }
-                if (open > 0 && close > open) {
-                    String head = line.substring(0, open).trim();
-                    String paramsStr = line.substring(open + 1, close).trim();
-                    String[] typeName = extractTypeAndName(head);
-                    if (typeName != null) {
-                        String methodName = typeName[1];
-                        String returnType = cleanReturnType(typeName[0]);
-                        List<String> params = new ArrayList<>();
-                        if (!paramsStr.isEmpty()) {
-                            String[] paramArray = paramsStr.split(",");
-                            for (String param : paramArray) {
-                                String paramType = extractParamType(param.trim());
-                                if (!paramType.isEmpty()) {
-                                    params.add(paramType);
-                                    addDependencies(paramType, type);
-                                }
-                            }
-                        }
-                        if (methodName.equals(type.name)) {
-                            returnType = "void";
-                        }
-                        String methodKey = methodName + "|" + String.join(",", params);
-                        if (methodKeys.add(methodKey)) {
-                            type.methods.add(new MethodModel(methodName, returnType, params));
-                        }
-                        addDependencies(returnType, type);
-                    }
+                if (t.is(j, ',') && t.isWord(j + 1) &&
+                        (t.is(j + 2, '=') || t.is(j + 2, ',') || t.is(j + 2, ';'))) {
+                    addField(type, fieldNames, t.text(j + 1), memberType, t.line(j + 1));
+                    j += 2;
+                } else if (t.is(j, '(') || t.is(j, '[') || t.is(j, '{')) {
+                    j = t.skipGroup(j, to);
+                } else {
+                    j++;
                 }
             }
+            return to;
         }
+        return skipMember(t, n, to);
     }
 
-    private void parseEnumBody(String body, TypeModel type) {
-        String cleaned = body.replaceAll("\\s+", " ").trim();
-        if (cleaned.isEmpty()) {
-            return;
+    /**
+     * Skips to the end of the member starting at {@code i}: its terminating {@code ;}, or the end of its
+     * block body when no {@code =} or {@code =>} came before the block.
+     */
+    private int skipMember(TokenStream t, int i, int to) {
+        boolean expression = false;
+        for (int j = i; j < to; j++) {
+            if (t.is(j, ';')) {
+                return j + 1;
+            }
+            if (t.is(j, '=') || t.is(j, "=>")) {
+                expression = true;
+            } else if (t.is(j, '{')) {
+                int after = t.skipGroup(j, to);
+                if (!expression) {
+                    return after;
+                }
+                j = after - 1;
+            } else if (t.is(j, '(') || t.is(j, '[')) {
+                j = t.skipGroup(j, to) - 1;
+            }
         }
-        String[] entries = cleaned.split(",");
-        for (String entry : entries) {
-            String item = entry.trim();
-            if (item.isEmpty()) {
-                continue;
+        return to;
+    }
+
+    private List<String> parseParameters(TokenStream t, int from, int to, TypeModel type) {
+        List<String> params = new ArrayList<>();
+        int i = from;
+        while (i < to) {
+            while (i < to && t.is(i, '[')) {
+                i = t.skipGroup(i, to);
             }
-            int assignIdx = item.indexOf('=');
-            if (assignIdx >= 0) {
-                item = item.substring(0, assignIdx).trim();
+            while (i < to && isOneOf(t, i, PARAM_MODIFIERS)) {
+                i++;
             }
-            item = item.replaceAll("^\\[[^\\]]*\\]\\s*", "");
-            if (!item.isEmpty()) {
-                type.fields.add(new FieldModel(item, ""));
+            int end = typeEnd(t, i, to);
+            if (end > i) {
+                String paramType = t.text(i, end);
+                params.add(paramType);
+                addDependencies(paramType, type);
+                i = end;
             }
+            while (i < to && !t.is(i, ',')) {
+                i = t.is(i, '(') || t.is(i, '[') || t.is(i, '{') ? t.skipGroup(i, to) : i + 1;
+            }
+            i++;
         }
+        return params;
     }
 
-    private String removeComments(String content) {
-        content = content.replaceAll("//.*", "");
-        content = content.replaceAll("(?s)/\\*.*?\\*/", "");
-        return content;
+    private void parseEnumBody(TokenStream t, int from, int to, TypeModel type) {
+        int i = from;
+        while (i < to) {
+            while (i < to && t.is(i, '[')) {
+                i = t.skipGroup(i, to);
+            }
+            if (i < to && t.isWord(i)) {
+                type.fields.add(new FieldModel(t.text(i), "", t.line(i)));
+            }
+            while (i < to && !t.is(i, ',')) {
+                i = t.is(i, '(') || t.is(i, '[') || t.is(i, '{') ? t.skipGroup(i, to) : i + 1;
+            }
+            i++;
+        }
     }
 
-    private int findOpeningBrace(String content, int start) {
-        boolean inString = false;
-        boolean verbatim = false;
-        char stringChar = '\0';
-
-        for (int i = start; i < content.length(); i++) {
-            char c = content.charAt(i);
-
-            if (!inString) {
-                if (c == '\'' ) {
-                    inString = true;
-                    verbatim = false;
-                    stringChar = c;
-                } else if (c == '"') {
-                    inString = true;
-                    verbatim = false;
-                    stringChar = c;
-                } else if (c == '@' && i + 1 < content.length() && content.charAt(i + 1) == '"') {
-                    inString = true;
-                    verbatim = true;
-                    stringChar = '"';
-                    i++;
-                } else if (c == '$') {
-                    if (i + 1 < content.length() && content.charAt(i + 1) == '"') {
-                        inString = true;
-                        verbatim = false;
-                        stringChar = '"';
-                        i++;
-                    } else if (i + 2 < content.length() &&
-                            content.charAt(i + 1) == '@' && content.charAt(i + 2) == '"') {
-                        inString = true;
-                        verbatim = true;
-                        stringChar = '"';
-                        i += 2;
+    /**
+     * Returns the index just past the type that starts at {@code i}: a (possibly qualified and generic)
+     * name or a tuple, followed by any nullable, pointer and array suffixes. Returns {@code -1} when no
+     * type starts there.
+     */
+    private int typeEnd(TokenStream t, int i, int limit) {
+        int j;
+        if (t.is(i, '(')) {
+            j = t.skipGroup(i, limit);
+        } else if (i < limit && t.isWord(i)) {
+            j = i + 1;
+            while (j < limit) {
+                if ((t.is(j, '.') || t.is(j, "::")) && t.isWord(j + 1)) {
+                    j += 2;
+                } else if (t.is(j, '<')) {
+                    int end = skipAngles(t, j, limit);
+                    if (end < 0) {
+                        break;
                     }
-                } else if (c == '{') {
-                    return i;
+                    j = end;
+                } else {
+                    break;
                 }
+            }
+        } else {
+            return -1;
+        }
+        while (j < limit) {
+            if (t.is(j, '?') || t.is(j, '*')) {
+                j++;
+            } else if (t.is(j, '[') && (t.is(j + 1, ']') || t.is(j + 1, ','))) {
+                j = t.skipGroup(j, limit);
             } else {
-                if (verbatim && c == '"') {
-                    if (i + 1 < content.length() && content.charAt(i + 1) == '"') {
-                        i++;
-                    } else {
-                        inString = false;
-                    }
-                } else if (!verbatim && c == stringChar && content.charAt(i - 1) != '\\') {
-                    inString = false;
-                }
+                break;
             }
         }
-        return -1;
+        return j;
     }
 
-    private int findMatchingBrace(String content, int openIndex) {
-        int braceCount = 0;
-        boolean inString = false;
-        boolean verbatim = false;
-        char stringChar = '\0';
-
-        for (int i = openIndex; i < content.length(); i++) {
-            char c = content.charAt(i);
-
-            if (!inString) {
-                if (c == '\'') {
-                    inString = true;
-                    verbatim = false;
-                    stringChar = c;
-                } else if (c == '"') {
-                    inString = true;
-                    verbatim = false;
-                    stringChar = c;
-                } else if (c == '@' && i + 1 < content.length() && content.charAt(i + 1) == '"') {
-                    inString = true;
-                    verbatim = true;
-                    stringChar = '"';
-                    i++;
-                } else if (c == '$') {
-                    if (i + 1 < content.length() && content.charAt(i + 1) == '"') {
-                        inString = true;
-                        verbatim = false;
-                        stringChar = '"';
-                        i++;
-                    } else if (i + 2 < content.length() &&
-                            content.charAt(i + 1) == '@' && content.charAt(i + 2) == '"') {
-                        inString = true;
-                        verbatim = true;
-                        stringChar = '"';
-                        i += 2;
-                    }
-                } else if (c == '{') {
-                    braceCount++;
-                } else if (c == '}') {
-                    braceCount--;
-                    if (braceCount == 0) {
-                        return i;
-                    }
-                }
-            } else {
-                if (verbatim && c == '"') {
-                    if (i + 1 < content.length() && content.charAt(i + 1) == '"') {
-                        i++;
-                    } else {
-                        inString = false;
-                    }
-                } else if (!verbatim && c == stringChar && content.charAt(i - 1) != '\\') {
-                    inString = false;
+    private int skipAngles(TokenStream t, int i, int limit) {
+        int depth = 0;
+        for (int j = i; j < limit; j++) {
+            if (t.is(j, '<')) {
+                depth++;
+            } else if (t.is(j, '>')) {
+                if (--depth == 0) {
+                    return j + 1;
                 }
+            } else if (t.is(j, '(') || t.is(j, '[')) {
+                j = t.skipGroup(j, limit) - 1;
+            } else if (t.is(j, ';') || t.is(j, '{') || t.is(j, '}') || t.is(j, ')') || t.is(j, '=')) {
+                return -1;
             }
         }
         return -1;
     }
 
-    private String stripMethodBodies(String body) {
-        StringBuilder cleaned = new StringBuilder(body);
-        Matcher methodMatcher = METHOD_PATTERN.matcher(cleaned);
-
-        int offset = 0;
-        int iterations = 0;
-        Debug.log("C# strip bodies start");
-        while (methodMatcher.find(offset)) {
-            iterations++;
-            if (iterations % 200 == 0) {
-                Debug.log("C# strip bodies progress: " + iterations + " methods scanned");
-            }
-            int searchStart = methodMatcher.end();
-            int semiColon = cleaned.indexOf(";", searchStart);
-            int openBrace = findOpeningBrace(cleaned.toString(), searchStart);
-            if (semiColon > 0 && (openBrace < 0 || semiColon < openBrace)) {
-                offset = semiColon + 1;
-                continue;
-            }
-            if (openBrace < 0) {
-                offset = methodMatcher.end();
-                continue;
+    private boolean isOneOf(TokenStream t, int i, String[] words) {
+        if (!t.isWord(i)) {
+            return false;
+        }
+        for (String word : words) {
+            if (t.is(i, word)) {
+                return true;
             }
+        }
+        return false;
+    }
 
-            int closeBrace = findMatchingBrace(cleaned.toString(), openBrace);
-            if (closeBrace < 0) {
-                offset = methodMatcher.end();
-                continue;
-            }
-            for (int i = openBrace + 1; i <= closeBrace; i++) {
-                cleaned.setCharAt(i, ' ');
-            }
-            offset = closeBrace + 1;
+    private void addField(TypeModel type, Set<String> fieldNames, String name, String fieldType, int line) {
+        if (fieldNames.add(name)) {
+            type.fields.add(new FieldModel(name, fieldType, line));
         }
-        Debug.log("C# strip bodies end (methods: " + iterations + ")");
+        addDependencies(fieldType, type);
+    }
 
-        return cleaned.toString();
+    private void addMethod(TypeModel type, Set<String> methodKeys, String name, String returnType,
+                           List<String> params, int line) {
+        String methodKey = name + "|" + String.join(",", params);
+        if (methodKeys.add(methodKey)) {
+            type.methods.add(new MethodModel(name, returnType, params, line));
+        }
     }
 
     private boolean isPrimitiveType(String type) {
         String lower = type.toLowerCase();
-        return lower.matches("^(int|long|short|byte|float|double|decimal|bool|char|string|object|void)$") ||
-                lower.matches("^[a-z]\\w*$") && Character.isLowerCase(type.charAt(0));
-    }
-
-    private String cleanGenericType(String type) {
-        int genericStart = type.indexOf('<');
-        if (genericStart > 0) {
-            return type.substring(0, genericStart).trim();
+        if (PRIMITIVES.contains(lower)) {
+            return true;
         }
-
-        int arrayStart = type.indexOf('[');
-        if (arrayStart > 0) {
-            return type.substring(0, arrayStart).trim();
+        if (!Character.isLowerCase(type.charAt(0)) || lower.charAt(0) < 'a' || lower.charAt(0) > 'z') {
+            return false;
         }
-
-        if (type.endsWith("?")) {
-            return type.substring(0, type.length() - 1).trim();
+        for (int i = 1; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '_')) {
+                return false;
+            }
         }
-
-        return type.trim();
+        return true;
     }
 
     private void addDependencies(String typeName, TypeModel type) {
@@ -543,7 +454,7 @@ public class CSharpLanguageParser implements LanguageParser {
             return;
         }
         for (String dep : extractTypeNames(typeName)) {
-            if (!isPrimitiveType(dep) && !dep.equals(type.name)) {
+            if (!isPrimitiveType(dep) && !dep.equals(type.simpleName()) && !dep.equals(type.name)) {
                 type.dependencies.add(dep);
             }
         }
@@ -559,6 +470,16 @@ public class CSharpLanguageParser implements LanguageParser {
             cleaned = cleaned.substring(0, cleaned.length() - 2).trim();
         }
 
+        if (cleaned.startsWith("(") && cleaned.endsWith(")")) {
+            List<String> result = new ArrayList<>();
+            for (String element : splitTopLevel(cleaned.substring(1, cleaned.length() - 1))) {
+                int space = element.lastIndexOf(' ');
+                result.addAll(extractTypeNames(space > 0 && depthAt(element, space) == 0
+                        ? element.substring(0, space) : element));
+            }
+            return result;
+        }
+
         int genericStart = cleaned.indexOf('<');
         if (genericStart < 0) {
             return List.of(cleaned);
@@ -572,108 +493,47 @@ public class CSharpLanguageParser implements LanguageParser {
             result.add(base);
         }
 
+        for (String part : splitTopLevel(args)) {
+            result.addAll(extractTypeNames(part));
+        }
+        return result;
+    }
+
+    private List<String> splitTopLevel(String types) {
+        List<String> parts = new ArrayList<>();
         int depth = 0;
         int last = 0;
-        for (int i = 0; i < args.length(); i++) {
-            char c = args.charAt(i);
-            if (c == '<') {
+        for (int i = 0; i < types.length(); i++) {
+            char c = types.charAt(i);
+            if (c == '<' || c == '(') {
                 depth++;
-            } else if (c == '>') {
+            } else if (c == '>' || c == ')') {
                 depth--;
             } else if (c == ',' && depth == 0) {
-                String part = args.substring(last, i).trim();
+                String part = types.substring(last, i).trim();
                 if (!part.isEmpty()) {
-                    result.addAll(extractTypeNames(part));
+                    parts.add(part);
                 }
                 last = i + 1;
             }
         }
-        String tail = args.substring(last).trim();
+        String tail = types.substring(last).trim();
         if (!tail.isEmpty()) {
-            result.addAll(extractTypeNames(tail));
-        }
-        return result;
-    }
-
-    private String extractParamType(String param) {
-        String cleaned = param.replaceAll("^\\[[^\\]]*\\]\\s*", "").trim();
-        cleaned = cleaned.replaceAll("\\s+", " ");
-        String[] tokens = cleaned.split(" ");
-        if (tokens.length == 0) {
-            return "";
-        }
-        int idx = 0;
-        while (idx < tokens.length && isParamModifier(tokens[idx])) {
-            idx++;
-        }
-        if (idx >= tokens.length) {
-            return "";
-        }
-        return tokens[idx].trim();
-    }
-
-    private boolean isParamModifier(String token) {
-        return "ref".equals(token) || "out".equals(token) || "in".equals(token) || "params".equals(token);
-    }
-
-    private String cleanReturnType(String returnType) {
-        String cleaned = returnType.trim().replaceAll("\\s+", " ");
-        String[] tokens = cleaned.split(" ");
-        int idx = 0;
-        while (idx < tokens.length && isModifier(tokens[idx])) {
-            idx++;
-        }
-        if (idx >= tokens.length) {
-            return cleaned;
-        }
-        StringBuilder sb = new StringBuilder(tokens[idx]);
-        for (int i = idx + 1; i < tokens.length; i++) {
-            if (isModifier(tokens[i])) {
-                continue;
-            }
-            sb.append(" ").append(tokens[i]);
-        }
-        return sb.toString().trim();
-    }
-
-    private boolean isModifier(String token) {
-        return "public".equals(token) || "private".equals(token) || "protected".equals(token) ||
-                "internal".equals(token) || "static".equals(token) || "virtual".equals(token) ||
-                "override".equals(token) || "abstract".equals(token) || "async".equals(token) ||
-                "sealed".equals(token) || "new".equals(token) || "extern".equals(token) ||
-                "unsafe".equals(token) || "partial".equals(token);
-    }
-
-    private String stripAttributes(String line) {
-        String trimmed = line.trim();
-        while (trimmed.startsWith("[") && trimmed.contains("]")) {
-            trimmed = trimmed.substring(trimmed.indexOf(']') + 1).trim();
+            parts.add(tail);
         }
-        return trimmed;
+        return parts;
     }
 
-    private String[] extractTypeAndName(String head) {
-        String cleaned = head.replaceAll("\\s+", " ").trim();
-        if (cleaned.isEmpty()) {
-            return null;
-        }
-        String[] tokens = cleaned.split(" ");
-        List<String> parts = new ArrayList<>();
-        for (String token : tokens) {
-            if (isModifier(token) || isFieldModifier(token)) {
-                continue;
+    private int depthAt(String type, int index) {
+        int depth = 0;
+        for (int i = 0; i < index; i++) {
+            char c = type.charAt(i);
+            if (c == '<' || c == '(') {
+                depth++;
+            } else if (c == '>' || c == ')') {
+                depth--;
             }
-            parts.add(token);
-        }
-        if (parts.size() < 2) {
-            return null;
         }
-        String name = parts.get(parts.size() - 1);
-        String type = String.join(" ", parts.subList(0, parts.size() - 1));
-        return new String[]{type, name};
-    }
-
-    private boolean isFieldModifier(String token) {
-        return "readonly".equals(token) || "const".equals(token) || "volatile".equals(token);
+        return depth;
     }
 }
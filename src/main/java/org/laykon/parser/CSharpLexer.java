@@ -0,0 +1,216 @@
+package org.laykon.parser;
+
+/**
+ * Single-pass C# tokenizer. Comments and preprocessor lines are dropped, every char and string literal
+ * (regular, verbatim, interpolated and raw, including nested literals inside interpolation holes)
+ * becomes one {@link TokenStream#STRING} token, and brackets are matched as they are read.
+ */
+final class CSharpLexer {
+
+    private CSharpLexer() {
+    }
+
+    static TokenStream tokenize(CharSequence src) {
+        TokenStream tokens = new TokenStream(src);
+        int length = src.length();
+        boolean lineStart = true;
+        int i = 0;
+        while (i < length) {
+            char c = src.charAt(i);
+            if (c == '\n') {
+                lineStart = true;
+                i++;
+                continue;
+            }
+            if (Character.isWhitespace(c) || c == '\uFEFF') {
+                i++;
+                continue;
+            }
+            if (c == '#' && lineStart) {
+                i = skipLine(src, i);
+                continue;
+            }
+            lineStart = false;
+
+            char next = i + 1 < length ? src.charAt(i + 1) : '\0';
+            if (c == '/' && next == '/') {
+                i = skipLine(src, i);
+            } else if (c == '/' && next == '*') {
+                int close = indexOf(src, "*/", i + 2);
+                i = close < 0 ? length : close + 2;
+            } else if (c == '"' || c == '\'' || c == '$' || c == '@') {
+                int end = skipLiteral(src, i);
+                if (end >= 0) {
+                    tokens.add(TokenStream.STRING, i, end + 1);
+                    i = end + 1;
+                } else if (c == '@' && isIdentifierStart(next)) {
+                    i = readWord(tokens, src, i + 1);
+                } else {
+                    tokens.add(TokenStream.PUNCT, i, i + 1);
+                    i++;
+                }
+            } else if (isIdentifierStart(c)) {
+                i = readWord(tokens, src, i);
+            } else if (Character.isDigit(c)) {
+                int start = i;
+                while (i < length && (Character.isLetterOrDigit(src.charAt(i)) || src.charAt(i) == '_'
+                        || src.charAt(i) == '.' && i + 1 < length && Character.isDigit(src.charAt(i + 1)))) {
+                    i++;
+                }
+                tokens.add(TokenStream.NUMBER, start, i);
+            } else if ((c == '=' && next == '>') || (c == ':' && next == ':')) {
+                tokens.add(TokenStream.PUNCT, i, i + 2);
+                i += 2;
+            } else {
+                tokens.add(TokenStream.PUNCT, i, i + 1);
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static int readWord(TokenStream tokens, CharSequence src, int start) {
+        int i = start + 1;
+        while (i < src.length() && isIdentifierPart(src.charAt(i))) {
+            i++;
+        }
+        tokens.add(TokenStream.WORD, start, i);
+        return i;
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static int skipLine(CharSequence src, int i) {
+        while (i < src.length() && src.charAt(i) != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int indexOf(CharSequence src, String needle, int from) {
+        int last = src.length() - needle.length();
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int k = 0; k < needle.length(); k++) {
+                if (src.charAt(i + k) != needle.charAt(k)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * If a char or string literal starts at {@code start}, returns the index of its last character
+     * (or the last index when it is unterminated), otherwise {@code -1}.
+     */
+    static int skipLiteral(CharSequence src, int start) {
+        int length = src.length();
+        int dollars = 0;
+        boolean verbatim = false;
+        int i = start;
+        while (i < length) {
+            char p = src.charAt(i);
+            if (p == '$') {
+                dollars++;
+            } else if (p == '@' && !verbatim) {
+                verbatim = true;
+            } else {
+                break;
+            }
+            i++;
+        }
+        if (i >= length) {
+            return -1;
+        }
+        char c = src.charAt(i);
+        if (c == '\'') {
+            return i == start ? skipQuoted(src, i + 1, '\'', false, false) : -1;
+        }
+        if (c != '"') {
+            return -1;
+        }
+        int quotes = 1;
+        while (i + quotes < length && src.charAt(i + quotes) == '"') {
+            quotes++;
+        }
+        if (quotes >= 3 && !verbatim) {
+            return skipRaw(src, i + quotes, quotes, dollars);
+        }
+        return skipQuoted(src, i + 1, '"', verbatim, dollars > 0);
+    }
+
+    private static int skipQuoted(CharSequence src, int start, char quote, boolean verbatim, boolean interpolated) {
+        int length = src.length();
+        for (int i = start; i < length; i++) {
+            char c = src.charAt(i);
+            if (c == '\\' && !verbatim) {
+                i++;
+            } else if (c == quote) {
+                if (verbatim && i + 1 < length && src.charAt(i + 1) == quote) {
+                    i++;
+                } else {
+                    return i;
+                }
+            } else if (c == '{' && interpolated) {
+                if (i + 1 < length && src.charAt(i + 1) == '{') {
+                    i++;
+                } else {
+                    i = skipInterpolationHole(src, i + 1);
+                }
+            } else if (c == '\n' && !verbatim) {
+                return i - 1;
+            }
+        }
+        return length - 1;
+    }
+
+    private static int skipRaw(CharSequence src, int start, int quotes, int dollars) {
+        int length = src.length();
+        int i = start;
+        while (i < length) {
+            char c = src.charAt(i);
+            int run = 1;
+            while (i + run < length && src.charAt(i + run) == c) {
+                run++;
+            }
+            if (c == '"' && run >= quotes) {
+                return i + run - 1;
+            }
+            if (c == '{' && dollars > 0 && run >= dollars) {
+                i = skipInterpolationHole(src, i + run) + 1;
+                continue;
+            }
+            i += run;
+        }
+        return length - 1;
+    }
+
+    private static int skipInterpolationHole(CharSequence src, int start) {
+        int depth = 0;
+        for (int i = start; i < src.length(); i++) {
+            int literalEnd = skipLiteral(src, i);
+            if (literalEnd >= 0) {
+                i = literalEnd;
+                continue;
+            }
+            char c = src.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            }
+        }
+        return src.length() - 1;
+    }
+}
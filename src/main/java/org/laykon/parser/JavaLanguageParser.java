@@ -1,22 +1,36 @@
 package org.laykon.parser;
 
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParseResult;
 import com.github.javaparser.ParserConfiguration;
-import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.body.*;
-import com.github.javaparser.ast.type.Type;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
 import org.laykon.model.*;
+import org.laykon.source.SourceFile;
 
-import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 public class JavaLanguageParser implements LanguageParser {
-    static {
-        StaticJavaParser.getParserConfiguration()
-                .setLanguageLevel(ParserConfiguration.LanguageLevel.BLEEDING_EDGE);
-    }
+    private static final ParserConfiguration.LanguageLevel LANGUAGE_LEVEL =
+            ParserConfiguration.LanguageLevel.BLEEDING_EDGE;
+
+    // JavaParser instances are not thread-safe, so each parsing thread gets its own.
+    // Comments are never read back, so they are not attributed. Tokens must be kept: node positions,
+    // and with them member line numbers, are taken from each node's token range.
+    private static final ThreadLocal<JavaParser> PARSER = ThreadLocal.withInitial(() -> new JavaParser(
+            new ParserConfiguration()
+                    .setLanguageLevel(LANGUAGE_LEVEL)
+                    .setAttributeComments(false)
+                    .setLexicalPreservationEnabled(false)
+    ));
 
     @Override
     public Set<String> extensions() {
@@ -24,13 +38,44 @@ public class JavaLanguageParser implements LanguageParser {
     }
 
     @Override
-    public void parse(Path file, ModelRepository repo) throws Exception {
-        CompilationUnit cu = StaticJavaParser.parse(file);
+    public String version() {
+        return "4:" + LANGUAGE_LEVEL;
+    }
 
-        for (ClassOrInterfaceDeclaration clazz : cu.findAll(ClassOrInterfaceDeclaration.class)) {
+    @Override
+    public void parse(SourceFile source, ModelRepository repo) throws Exception {
+        ParseResult<CompilationUnit> result = PARSER.get().parse(source.reader());
+        if (!result.isSuccessful() || result.getResult().isEmpty()) {
+            throw new ParseProblemException(result.getProblems());
+        }
+        CompilationUnit unit = result.getResult().get();
+        String pkg = unit.getPackageDeclaration().map(p -> p.getNameAsString()).orElse("");
+        unit.accept(new ModelCollector(repo, pkg), null);
+    }
+
+    /**
+     * Collects every class and interface with its members in a single walk of the compilation unit.
+     * Types are named within the file's package, nested types after their enclosing type. A referenced
+     * class or interface type counts as a dependency of each enclosing declaration, as nested types are
+     * part of their outer type's body. Only erased names are recorded; type arguments
+     * and array components are visited as types of their own.
+     */
+    private static final class ModelCollector extends VoidVisitorAdapter<Void> {
+        private final ModelRepository repo;
+        private final String pkg;
+        private final Deque<TypeModel> enclosing = new ArrayDeque<>();
+
+        private ModelCollector(ModelRepository repo, String pkg) {
+            this.repo = repo;
+            this.pkg = pkg;
+        }
 
+        @Override
+        public void visit(ClassOrInterfaceDeclaration clazz, Void arg) {
+            TypeModel outer = enclosing.peek();
             TypeModel type = repo.getOrCreate(
-                    clazz.getNameAsString(),
+                    pkg,
+                    outer == null ? clazz.getNameAsString() : outer.localName() + "." + clazz.getNameAsString(),
                     clazz.isInterface() ? TypeKind.INTERFACE : TypeKind.CLASS
             );
 
@@ -44,7 +89,8 @@ public class JavaLanguageParser implements LanguageParser {
                 field.getVariables().forEach(v ->
                         type.fields.add(new FieldModel(
                                 v.getNameAsString(),
-                                field.getElementType().asString()
+                                field.getElementType().asString(),
+                                line(v)
                         ))
                 );
             }
@@ -58,16 +104,35 @@ public class JavaLanguageParser implements LanguageParser {
                 type.methods.add(new MethodModel(
                         m.getNameAsString(),
                         m.getType().asString(),
-                        params
+                        params,
+                        line(m)
                 ));
             }
 
-            clazz.findAll(Type.class).forEach(t -> {
-                String used = t.asString();
-                if (!used.equals(type.name)) {
+            enclosing.push(type);
+            super.visit(clazz, arg);
+            enclosing.pop();
+        }
+
+        @Override
+        public void visit(ClassOrInterfaceType n, Void arg) {
+            use(n.getNameWithScope());
+            super.visit(n, arg);
+        }
+
+        private static int line(Node n) {
+            return n.getBegin().map(p -> p.line).orElse(0);
+        }
+
+        private void use(String used) {
+            if (enclosing.isEmpty()) {
+                return;
+            }
+            for (TypeModel type : enclosing) {
+                if (!used.equals(type.simpleName()) && !used.equals(type.name)) {
                     type.dependencies.add(used);
                 }
-            });
+            }
         }
     }
 }
@@ -1,6 +1,8 @@
 package org.laykon.parser;
 
+import org.laykon.model.ModelFragment;
 import org.laykon.model.ModelRepository;
+import org.laykon.source.SourceFile;
 
 import java.nio.file.Path;
 import java.util.Set;
@@ -9,5 +11,38 @@ public interface LanguageParser {
 
     Set<String> extensions();
 
-    void parse(Path file, ModelRepository repo) throws Exception;
+    /**
+     * Identifies this parser's behaviour, including any options that affect its output.
+     * Bump it whenever the same input could produce a different model, so cached results are discarded.
+     */
+    default String version() {
+        return "1";
+    }
+
+    /**
+     * What the model of {@code file} depends on besides its content, like a module path taken from the
+     * directories around it. A cached model is only used while this is unchanged.
+     */
+    default String context(Path file) {
+        return "";
+    }
+
+    /**
+     * Adds the types declared in {@code source} to {@code repo}, a repository of its own for this file.
+     */
+    void parse(SourceFile source, ModelRepository repo) throws Exception;
+
+    /**
+     * Parses {@code source} on its own into an immutable fragment, ready to be merged into a shared model.
+     * Parsers never touch shared state, so any number of files can be parsed at once.
+     */
+    default ModelFragment parse(SourceFile source) throws Exception {
+        ModelRepository scratch = new ModelRepository();
+        parse(source, scratch);
+        return ModelFragment.of(scratch);
+    }
+
+    default void parse(Path file, ModelRepository repo) throws Exception {
+        parse(SourceFile.open(file), repo);
+    }
 }
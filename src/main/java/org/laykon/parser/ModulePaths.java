@@ -0,0 +1,123 @@
+package org.laykon.parser;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Derives the dotted module path a Python or TypeScript file declares its types in, as those languages
+ * have no package statement to read. What each directory contributes is looked up once and remembered, so
+ * the files of a directory share one walk towards the root; {@link #forget()} drops it when markers change.
+ */
+public final class ModulePaths {
+
+    private static final Set<String> MARKERS = Set.of("__init__.py", "package.json", "tsconfig.json");
+
+    // Per directory: the Python package it is, empty when it is none.
+    private static final Map<Path, String> PACKAGES = new ConcurrentHashMap<>();
+    // Per directory: its module path below the nearest TypeScript project root, empty when there is no root.
+    private static final Map<Path, Optional<String>> PROJECT_PATHS = new ConcurrentHashMap<>();
+
+    private ModulePaths() {
+    }
+
+    /**
+     * Whether {@code file} decides the module paths of the files around it, so that creating, changing or
+     * deleting it changes the modules of the files in and below its directory.
+     */
+    public static boolean isMarker(Path file) {
+        Path name = file.getFileName();
+        return name != null && MARKERS.contains(name.toString());
+    }
+
+    /**
+     * Drops what is known about the directories, to be looked up again after markers changed.
+     */
+    public static void forget() {
+        PACKAGES.clear();
+        PROJECT_PATHS.clear();
+    }
+
+    /**
+     * The Python module of {@code file}: its stem, preceded by every enclosing directory that is a package,
+     * one with an {@code __init__.py}. A package's own {@code __init__.py} is the package's module.
+     */
+    static String python(Path file) {
+        Path abs = file.toAbsolutePath().normalize();
+        String pkg = pythonPackage(abs.getParent());
+        String stem = stem(abs, ".py");
+        return stem.equals("__init__") ? pkg : join(pkg, sanitize(stem));
+    }
+
+    /**
+     * The TypeScript module of {@code file}: its path without extension relative to the nearest enclosing
+     * project root, a directory with a {@code package.json} or {@code tsconfig.json}. An {@code index} file
+     * is its directory's module, and one at the top is named after its directory. Without a project root,
+     * the stem alone.
+     */
+    static String typeScript(Path file) {
+        Path abs = file.toAbsolutePath().normalize();
+        String stem = stem(abs, ".ts");
+        if (stem.endsWith(".d")) {
+            stem = stem.substring(0, stem.length() - 2);
+        }
+        Path dir = abs.getParent();
+        String module = join(projectPath(dir).orElse(""), stem.equals("index") ? "" : sanitize(stem));
+        if (module.isEmpty()) {
+            module = sanitize(dir == null || dir.getFileName() == null ? stem : dir.getFileName().toString());
+        }
+        return module;
+    }
+
+    private static String pythonPackage(Path dir) {
+        if (dir == null || dir.getFileName() == null) {
+            return "";
+        }
+        String pkg = PACKAGES.get(dir);
+        if (pkg == null) {
+            pkg = Files.isRegularFile(dir.resolve("__init__.py"))
+                    ? join(pythonPackage(dir.getParent()), sanitize(dir.getFileName().toString()))
+                    : "";
+            PACKAGES.put(dir, pkg);
+        }
+        return pkg;
+    }
+
+    private static Optional<String> projectPath(Path dir) {
+        if (dir == null || dir.getFileName() == null) {
+            return Optional.empty();
+        }
+        Optional<String> path = PROJECT_PATHS.get(dir);
+        if (path == null) {
+            if (Files.isRegularFile(dir.resolve("package.json")) || Files.isRegularFile(dir.resolve("tsconfig.json"))) {
+                path = Optional.of("");
+            } else {
+                path = projectPath(dir.getParent()).map(p -> join(p, sanitize(dir.getFileName().toString())));
+            }
+            PROJECT_PATHS.put(dir, path);
+        }
+        return path;
+    }
+
+    private static String join(String outer, String inner) {
+        return outer.isEmpty() ? inner : inner.isEmpty() ? outer : outer + "." + inner;
+    }
+
+    // File and directory names may hold characters no diagram name can, like the dash of user-service.ts.
+    private static String sanitize(String part) {
+        StringBuilder sb = new StringBuilder(part.length());
+        for (int i = 0; i < part.length(); i++) {
+            char c = part.charAt(i);
+            sb.append(Character.isLetterOrDigit(c) || c == '_' || c == '.' ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    private static String stem(Path file, String extension) {
+        String name = file.getFileName().toString();
+        return name.endsWith(extension) ? name.substring(0, name.length() - extension.length()) : name;
+    }
+}
@@ -1,10 +1,11 @@
 package org.laykon.parser;
 
 import org.laykon.model.*;
-import org.laykon.util.Debug;
+import org.laykon.source.SourceFile;
+import org.laykon.util.Log;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.Reader;
 import java.nio.file.Path;
 import java.util.*;
 
@@ -16,128 +17,121 @@ public class PythonLanguageParser implements LanguageParser {
     }
 
     @Override
-    public void parse(Path file, ModelRepository repo) {
-        try {
-            List<String> lines = Files.readAllLines(file);
-
-            TypeModel currentClass = null;
-            int classIndent = -1;
-            String currentMethod = null;
-            int methodIndent = -1;
-            boolean inInit = false;
-            Map<String, String> initParamTypes = new HashMap<>();
-
-            Debug.log("Py parse start: " + file + " (" + lines.size() + " lines)");
-            for (String line : lines) {
-                int indent = countIndent(line);
-                String trimmed = line.strip();
-
-                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
-                    continue;
-                }
-
-                if (currentClass != null && indent <= classIndent && !trimmed.startsWith("@")) {
-                    currentClass = null;
-                    classIndent = -1;
-                    currentMethod = null;
-                    methodIndent = -1;
-                    inInit = false;
-                    initParamTypes.clear();
-                }
-
-                if (currentMethod != null && indent <= methodIndent) {
-                    currentMethod = null;
-                    methodIndent = -1;
-                    inInit = false;
-                    initParamTypes.clear();
-                }
+    public String version() {
+        return "3";
+    }
 
-                if (trimmed.startsWith("class ")) {
-                    String name = parseClassName(trimmed);
-                    List<String> parents = parseBaseClasses(trimmed);
-                    TypeKind kind = TypeKind.CLASS;
-                    if (parents.contains("Enum")) {
-                        kind = TypeKind.ENUM;
-                    } else if (parents.contains("ABC")) {
-                        kind = TypeKind.INTERFACE;
-                    }
-                    currentClass = repo.getOrCreate(name, kind);
-                    classIndent = indent;
-                    currentMethod = null;
-                    methodIndent = -1;
-                    inInit = false;
-                    initParamTypes.clear();
-                    Debug.log("Py class " + name);
-
-                    for (String parent : parents) {
-                        if (!parent.isBlank()) {
-                            if ("Enum".equals(parent) || "ABC".equals(parent)) {
-                                continue;
-                            }
-                            currentClass.extendsTypes.add(parent);
-                            addDependencies(parent, currentClass);
-                        }
-                    }
+    @Override
+    public String context(Path file) {
+        return ModulePaths.python(file);
+    }
 
-                } else if (trimmed.startsWith("def ") && currentClass != null && indent > classIndent) {
-                    String methodName = parseMethodName(trimmed);
-                    String paramsPart = parseParams(trimmed);
-                    String returnType = parseReturnType(trimmed);
-                    List<String> params = parseParamTypes(paramsPart);
-                    initParamTypes = parseParamNameTypes(paramsPart);
+    @Override
+    public void parse(SourceFile source, ModelRepository repo) throws IOException {
+        try (Reader reader = source.reader()) {
+            parse(source, new PythonLineReader(reader), repo);
+        }
+    }
 
-                    inInit = methodName.equals("__init__");
-                    currentMethod = methodName;
-                    methodIndent = indent;
+    private void parse(SourceFile source, PythonLineReader lines, ModelRepository repo) throws IOException {
+
+        String module = ModulePaths.python(source.path());
+        TypeModel currentClass = null;
+        int classIndent = -1;
+        String currentMethod = null;
+        int methodIndent = -1;
+        boolean inInit = false;
+        Map<String, String> initParamTypes = new HashMap<>();
+
+        Log.debug(() -> "Py parse start: " + source.path());
+        while (lines.next()) {
+            int indent = lines.indent();
+            String trimmed = lines.text();
+
+            if (currentClass != null && indent <= classIndent && !trimmed.startsWith("@")) {
+                currentClass = null;
+                classIndent = -1;
+                currentMethod = null;
+                methodIndent = -1;
+                inInit = false;
+                initParamTypes.clear();
+            }
 
-                    if (inInit) {
-                        returnType = "void";
-                    }
+            if (currentMethod != null && indent <= methodIndent) {
+                currentMethod = null;
+                methodIndent = -1;
+                inInit = false;
+                initParamTypes.clear();
+            }
 
-                    if (!"__init__".equals(methodName)) {
-                        String normalizedReturn = "None".equalsIgnoreCase(returnType) ? "void" : returnType;
-                        currentClass.methods.add(new MethodModel(methodName, normalizedReturn, params));
-                        addDependencies(normalizedReturn, currentClass);
-                        for (String p : params) {
-                            addDependencies(p, currentClass);
+            if (trimmed.startsWith("class ")) {
+                String name = parseClassName(trimmed);
+                List<String> parents = parseBaseClasses(trimmed);
+                TypeKind kind = TypeKind.CLASS;
+                if (parents.contains("Enum")) {
+                    kind = TypeKind.ENUM;
+                } else if (parents.contains("ABC")) {
+                    kind = TypeKind.INTERFACE;
+                }
+                currentClass = repo.getOrCreate(module, name, kind);
+                classIndent = indent;
+                currentMethod = null;
+                methodIndent = -1;
+                inInit = false;
+                initParamTypes.clear();
+                Log.trace(() -> "Py class " + name);
+
+                for (String parent : parents) {
+                    if (!parent.isBlank()) {
+                        if ("Enum".equals(parent) || "ABC".equals(parent)) {
+                            continue;
                         }
+                        currentClass.extendsTypes.add(parent);
+                        addDependencies(parent, currentClass);
                     }
+                }
 
-                } else if (currentClass != null && inInit && trimmed.contains("self.") && indent > methodIndent) {
-                    FieldModel field = parseSelfAssignment(trimmed, initParamTypes);
-                    if (field != null) {
-                        currentClass.fields.add(field);
-                        addDependencies(field.type, currentClass);
-                    }
+            } else if (trimmed.startsWith("def ") && currentClass != null && indent > classIndent) {
+                String methodName = parseMethodName(trimmed);
+                String paramsPart = parseParams(trimmed);
+                String returnType = parseReturnType(trimmed);
+                List<String> params = parseParamTypes(paramsPart);
+                initParamTypes = parseParamNameTypes(paramsPart);
+
+                inInit = methodName.equals("__init__");
+                currentMethod = methodName;
+                methodIndent = indent;
 
-                } else if (currentClass != null && currentMethod == null && indent > classIndent) {
-                    FieldModel field = parseClassField(trimmed, currentClass);
-                    if (field != null) {
-                        currentClass.fields.add(field);
-                        addDependencies(field.type, currentClass);
+                if (inInit) {
+                    returnType = "void";
+                }
+
+                if (!"__init__".equals(methodName)) {
+                    String normalizedReturn = "None".equalsIgnoreCase(returnType) ? "void" : returnType;
+                    currentClass.methods.add(
+                            new MethodModel(methodName, normalizedReturn, params, lines.lineNumber()));
+                    addDependencies(normalizedReturn, currentClass);
+                    for (String p : params) {
+                        addDependencies(p, currentClass);
                     }
                 }
-            }
-            Debug.log("Py parse done: " + file);
 
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
+            } else if (currentClass != null && inInit && trimmed.contains("self.") && indent > methodIndent) {
+                FieldModel field = parseSelfAssignment(trimmed, initParamTypes, lines.lineNumber());
+                if (field != null) {
+                    currentClass.fields.add(field);
+                    addDependencies(field.type, currentClass);
+                }
 
-    private int countIndent(String line) {
-        int count = 0;
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            if (c == ' ') {
-                count++;
-            } else if (c == '\t') {
-                count += 4;
-            } else {
-                break;
+            } else if (currentClass != null && currentMethod == null && indent > classIndent) {
+                FieldModel field = parseClassField(trimmed, currentClass, lines.lineNumber());
+                if (field != null) {
+                    currentClass.fields.add(field);
+                    addDependencies(field.type, currentClass);
+                }
             }
         }
-        return count;
+        Log.debug(() -> "Py parse done: " + source.path() + " (" + lines.physicalLines() + " lines)");
     }
 
     private String parseClassName(String trimmed) {
@@ -155,23 +149,11 @@ public class PythonLanguageParser implements LanguageParser {
 
     private List<String> parseBaseClasses(String trimmed) {
         int open = trimmed.indexOf('(');
-        int close = trimmed.indexOf(')');
-        if (open < 0 || close < 0 || close <= open) {
-            return List.of();
-        }
-        String inside = trimmed.substring(open + 1, close).trim();
-        if (inside.isEmpty()) {
+        int close = closingParen(trimmed, open);
+        if (open < 0 || close < 0) {
             return List.of();
         }
-        String[] parts = inside.split(",");
-        List<String> bases = new ArrayList<>();
-        for (String part : parts) {
-            String base = part.trim();
-            if (!base.isEmpty()) {
-                bases.add(base);
-            }
-        }
-        return bases;
+        return splitTopLevel(trimmed.substring(open + 1, close));
     }
 
     private String parseMethodName(String trimmed) {
@@ -185,15 +167,16 @@ public class PythonLanguageParser implements LanguageParser {
 
     private String parseParams(String trimmed) {
         int open = trimmed.indexOf('(');
-        int close = trimmed.indexOf(')');
-        if (open < 0 || close < 0 || close <= open) {
+        int close = closingParen(trimmed, open);
+        if (open < 0 || close < 0) {
             return "";
         }
         return trimmed.substring(open + 1, close).trim();
     }
 
     private String parseReturnType(String trimmed) {
-        int arrow = trimmed.indexOf("->");
+        int close = closingParen(trimmed, trimmed.indexOf('('));
+        int arrow = trimmed.indexOf("->", Math.max(close, 0));
         if (arrow < 0) {
             return "void";
         }
@@ -203,13 +186,58 @@ public class PythonLanguageParser implements LanguageParser {
         return ret.isEmpty() ? "void" : ret;
     }
 
+    /**
+     * Index of the parenthesis closing the one at {@code open}, or {@code -1}.
+     */
+    private int closingParen(String s, int open) {
+        if (open < 0) {
+            return -1;
+        }
+        int depth = 0;
+        for (int i = open; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '(' || c == '[' || c == '{') {
+                depth++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                depth--;
+                if (depth == 0) {
+                    return c == ')' ? i : -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Splits on commas outside brackets, dropping empty parts, so {@code Dict[str, Widget]} stays whole.
+     */
+    private List<String> splitTopLevel(String s) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        int last = 0;
+        for (int i = 0; i <= s.length(); i++) {
+            char c = i < s.length() ? s.charAt(i) : ',';
+            if (c == '(' || c == '[' || c == '{') {
+                depth++;
+            } else if (c == ')' || c == ']' || c == '}') {
+                depth--;
+            } else if (c == ',' && depth <= 0) {
+                String part = s.substring(last, i).trim();
+                if (!part.isEmpty()) {
+                    parts.add(part);
+                }
+                last = i + 1;
+            }
+        }
+        return parts;
+    }
+
     private List<String> parseParamTypes(String paramsPart) {
         if (paramsPart.isEmpty()) {
             return List.of();
         }
         List<String> types = new ArrayList<>();
-        String[] params = paramsPart.split(",");
-        for (String raw : params) {
+        for (String raw : splitTopLevel(paramsPart)) {
             String p = raw.trim();
             if (p.isEmpty()) {
                 continue;
@@ -240,8 +268,7 @@ public class PythonLanguageParser implements LanguageParser {
         if (paramsPart.isEmpty()) {
             return map;
         }
-        String[] params = paramsPart.split(",");
-        for (String raw : params) {
+        for (String raw : splitTopLevel(paramsPart)) {
             String p = raw.trim();
             if (p.isEmpty()) {
                 continue;
@@ -263,7 +290,7 @@ public class PythonLanguageParser implements LanguageParser {
         return map;
     }
 
-    private FieldModel parseSelfAssignment(String trimmed, Map<String, String> initParamTypes) {
+    private FieldModel parseSelfAssignment(String trimmed, Map<String, String> initParamTypes, int lineNumber) {
         String line = trimmed;
         int eq = line.indexOf('=');
         String left = eq >= 0 ? line.substring(0, eq).trim() : line.trim();
@@ -290,15 +317,15 @@ public class PythonLanguageParser implements LanguageParser {
         if (type.isEmpty()) {
             type = "any";
         }
-        return new FieldModel(name, type);
+        return new FieldModel(name, type, lineNumber);
     }
 
-    private FieldModel parseClassField(String trimmed, TypeModel currentClass) {
-        if (currentClass.kind == TypeKind.ENUM) {
+    private FieldModel parseClassField(String trimmed, TypeModel currentClass, int lineNumber) {
+        if (currentClass.kind() == TypeKind.ENUM) {
             int eq = trimmed.indexOf('=');
             String name = eq >= 0 ? trimmed.substring(0, eq).trim() : trimmed.trim();
             if (!name.isEmpty() && name.chars().allMatch(c -> Character.isUpperCase(c) || c == '_' || Character.isDigit(c))) {
-                return new FieldModel(name, "");
+                return new FieldModel(name, "", lineNumber);
             }
         }
 
@@ -318,7 +345,7 @@ public class PythonLanguageParser implements LanguageParser {
         if (type.isEmpty()) {
             type = "any";
         }
-        return new FieldModel(name, type);
+        return new FieldModel(name, type, lineNumber);
     }
 
     private void addDependencies(String typeName, TypeModel currentClass) {
@@ -326,7 +353,7 @@ public class PythonLanguageParser implements LanguageParser {
             return;
         }
         for (String dep : extractTypeNames(typeName)) {
-            if (!isPrimitiveType(dep) && !dep.equals(currentClass.name) &&
+            if (!isPrimitiveType(dep) && !dep.equals(currentClass.simpleName()) && !dep.equals(currentClass.name) &&
                     !currentClass.extendsTypes.contains(dep) && !currentClass.implementsTypes.contains(dep)) {
                 currentClass.dependencies.add(dep);
             }
@@ -0,0 +1,278 @@
+package org.laykon.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streams a Python source as logical lines. Physical lines are joined while a bracket is open or after a
+ * trailing backslash, so a {@code def} signature or {@code class} header spread over several lines arrives
+ * as one. Comments are dropped, and triple-quoted strings are reduced to their quotes wherever they
+ * appear, so docstring text never looks like code. Blank and comment-only lines are skipped.
+ * <p>
+ * Only a fixed read buffer and the current logical line are held. A logical line longer than
+ * {@link #MAX_LINE} characters, such as a huge bracketed literal, is truncated.
+ */
+final class PythonLineReader {
+    static final int MAX_LINE = 1 << 16;
+
+    private static final int EOF = -1;
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private int pushedBack = EOF;
+
+    private final StringBuilder line = new StringBuilder(256);
+    private int indent;
+    private int lineNumber;
+    private int physicalLines;
+
+    PythonLineReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Advances to the next logical line that holds code. Returns {@code false} at the end of the input.
+     */
+    boolean next() throws IOException {
+        line.setLength(0);
+        while (true) {
+            int c = readIndent();
+            if (c == EOF) {
+                return false;
+            }
+            if (c == '#') {
+                c = skipComment();
+            }
+            if (c == '\n' || c == '\r') {
+                endLine(c);
+                continue;
+            }
+            if (c == EOF) {
+                return false;
+            }
+            lineNumber = physicalLines + 1;
+            readLogicalLine(c);
+            trimTrailing();
+            if (line.length() > 0) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Indentation of the current logical line's first physical line: a space counts one, a tab four.
+     */
+    int indent() {
+        return indent;
+    }
+
+    /**
+     * Line on which the current logical line starts, counting from 1.
+     */
+    int lineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * The current logical line, without indentation, comments or trailing whitespace.
+     */
+    String text() {
+        return line.toString();
+    }
+
+    int physicalLines() {
+        return physicalLines;
+    }
+
+    private int readIndent() throws IOException {
+        indent = 0;
+        while (true) {
+            int c = read();
+            if (c == ' ') {
+                indent++;
+            } else if (c == '\t') {
+                indent += 4;
+            } else {
+                return c;
+            }
+        }
+    }
+
+    private void readLogicalLine(int first) throws IOException {
+        int depth = 0;
+        int c = first;
+        while (c != EOF) {
+            if (c == '\n' || c == '\r') {
+                endLine(c);
+                if (depth == 0) {
+                    return;
+                }
+                c = skipJoinWhitespace();
+                continue;
+            }
+            if (c == '#') {
+                c = skipComment();
+                continue;
+            }
+            if (c == '\\') {
+                int next = read();
+                if (next == '\n' || next == '\r') {
+                    endLine(next);
+                    c = skipJoinWhitespace();
+                    continue;
+                }
+                append('\\');
+                if (next == EOF) {
+                    return;
+                }
+                append((char) next);
+            } else if (c == '"' || c == '\'') {
+                readString((char) c);
+            } else {
+                if (c == '(' || c == '[' || c == '{') {
+                    depth++;
+                } else if ((c == ')' || c == ']' || c == '}') && depth > 0) {
+                    depth--;
+                }
+                append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * Reads a string literal whose opening quote was just consumed. Triple-quoted strings keep only their
+     * quotes. An unterminated single-quoted string ends at the line break.
+     */
+    private void readString(char quote) throws IOException {
+        append(quote);
+        int c = read();
+        if (c == quote) {
+            int third = read();
+            if (third != quote) {
+                append(quote);
+                unread(third);
+                return;
+            }
+            skipTripleQuoted(quote);
+            append(quote);
+            append(quote);
+            append(quote);
+            append(quote);
+            append(quote);
+            return;
+        }
+        while (c != EOF) {
+            if (c == '\\') {
+                int next = read();
+                if (next == '\n' || next == '\r') {
+                    endLine(next);
+                } else if (next != EOF) {
+                    append('\\');
+                    append((char) next);
+                }
+            } else if (c == '\n' || c == '\r') {
+                unread(c);
+                return;
+            } else {
+                append((char) c);
+                if (c == quote) {
+                    return;
+                }
+            }
+            c = read();
+        }
+    }
+
+    private void skipTripleQuoted(char quote) throws IOException {
+        int run = 0;
+        int c;
+        while ((c = read()) != EOF) {
+            if (c == quote) {
+                if (++run == 3) {
+                    return;
+                }
+                continue;
+            }
+            run = 0;
+            if (c == '\\') {
+                c = read();
+            }
+            if (c == '\n' || c == '\r') {
+                endLine(c);
+            }
+        }
+    }
+
+    /**
+     * Skips a comment up to, but not including, its line break and returns the character ending it.
+     */
+    private int skipComment() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != EOF && c != '\n' && c != '\r');
+        return c;
+    }
+
+    /**
+     * Skips the indentation of a continuation line and leaves a single space in the logical line instead.
+     */
+    private int skipJoinWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == ' ' || c == '\t');
+        if (line.length() > 0 && line.charAt(line.length() - 1) != ' ') {
+            append(' ');
+        }
+        return c;
+    }
+
+    private void endLine(int c) throws IOException {
+        physicalLines++;
+        if (c == '\r') {
+            int next = read();
+            if (next != '\n') {
+                unread(next);
+            }
+        }
+    }
+
+    private void trimTrailing() {
+        int end = line.length();
+        while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        line.setLength(end);
+    }
+
+    private void append(char c) {
+        if (line.length() < MAX_LINE) {
+            line.append(c);
+        }
+    }
+
+    private int read() throws IOException {
+        if (pushedBack != EOF) {
+            int c = pushedBack;
+            pushedBack = EOF;
+            return c;
+        }
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return EOF;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void unread(int c) {
+        pushedBack = c;
+    }
+}
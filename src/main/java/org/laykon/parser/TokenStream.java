@@ -0,0 +1,219 @@
+package org.laykon.parser;
+
+import java.util.Arrays;
+
+/**
+ * Flat token buffer filled by the hand-written lexers. Tokens are kept as parallel arrays of kind and
+ * source offsets, so scanning a file allocates no per-token objects; text is only materialised for the
+ * names and types that end up in the model. Brackets are matched while tokens are added.
+ */
+final class TokenStream {
+    static final byte WORD = 1;
+    static final byte NUMBER = 2;
+    static final byte STRING = 3;
+    static final byte PUNCT = 4;
+
+    private final CharSequence source;
+    private byte[] kinds;
+    private int[] starts;
+    private int[] ends;
+    private int[] matches;
+    private int size;
+
+    private int[] open = new int[32];
+    private int openDepth;
+
+    // Offsets at which each line starts, built on the first line lookup.
+    private int[] lineStarts;
+
+    TokenStream(CharSequence source) {
+        this.source = source;
+        int capacity = Math.max(16, source.length() / 4);
+        kinds = new byte[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        matches = new int[capacity];
+    }
+
+    void add(byte kind, int start, int end) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            matches = Arrays.copyOf(matches, capacity);
+        }
+        int index = size++;
+        kinds[index] = kind;
+        starts[index] = start;
+        ends[index] = end;
+        matches[index] = -1;
+        if (kind == PUNCT && end - start == 1) {
+            matchBracket(index, source.charAt(start));
+        }
+    }
+
+    private void matchBracket(int index, char c) {
+        if (c == '{' || c == '(' || c == '[') {
+            if (openDepth == open.length) {
+                open = Arrays.copyOf(open, openDepth * 2);
+            }
+            open[openDepth++] = index;
+            return;
+        }
+        char expected = c == '}' ? '{' : c == ')' ? '(' : c == ']' ? '[' : '\0';
+        if (expected == '\0') {
+            return;
+        }
+        for (int d = openDepth - 1; d >= 0; d--) {
+            if (source.charAt(starts[open[d]]) == expected) {
+                matches[open[d]] = index;
+                matches[index] = open[d];
+                openDepth = d;
+                return;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte kind(int i) {
+        return kinds[i];
+    }
+
+    int start(int i) {
+        return starts[i];
+    }
+
+    int end(int i) {
+        return ends[i];
+    }
+
+    /**
+     * Index of the bracket matching the one at {@code i}, or {@code -1} when it is unbalanced.
+     */
+    int match(int i) {
+        return matches[i];
+    }
+
+    /**
+     * Index just past the bracket group opened at {@code i}, or {@code limit} when it is unbalanced.
+     */
+    int skipGroup(int i, int limit) {
+        int close = matches[i];
+        return close < 0 || close >= limit ? limit : close + 1;
+    }
+
+    // Indexes outside the stream, such as the one before the first token, match nothing.
+    boolean is(int i, char c) {
+        return i >= 0 && i < size && kinds[i] == PUNCT && ends[i] - starts[i] == 1 && source.charAt(starts[i]) == c;
+    }
+
+    boolean is(int i, String text) {
+        if (i < 0 || i >= size || ends[i] - starts[i] != text.length()) {
+            return false;
+        }
+        int start = starts[i];
+        for (int k = 0; k < text.length(); k++) {
+            if (source.charAt(start + k) != text.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isWord(int i) {
+        return i >= 0 && i < size && kinds[i] == WORD;
+    }
+
+    /**
+     * Whether a line break separates token {@code i} from the token before it.
+     */
+    boolean lineBreakBefore(int i) {
+        if (i <= 0 || i >= size) {
+            return false;
+        }
+        for (int k = ends[i - 1]; k < starts[i]; k++) {
+            if (source.charAt(k) == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    String text(int i) {
+        return source.subSequence(starts[i], ends[i]).toString();
+    }
+
+    /**
+     * Line of token {@code i}, counting from 1.
+     */
+    int line(int i) {
+        if (lineStarts == null) {
+            int[] found = new int[64];
+            int count = 1;
+            for (int k = 0; k < source.length(); k++) {
+                if (source.charAt(k) == '\n') {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = k + 1;
+                }
+            }
+            lineStarts = Arrays.copyOf(found, count);
+        }
+        int index = Arrays.binarySearch(lineStarts, starts[Math.min(i, size - 1)]);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    /**
+     * Returns the source text spanned by tokens {@code [from, to)} with every whitespace run collapsed
+     * to a single space, keeping the author's spacing between tokens otherwise intact.
+     */
+    String sourceText(int from, int to) {
+        if (from >= to) {
+            return "";
+        }
+        int start = starts[from];
+        int end = ends[to - 1];
+        StringBuilder sb = new StringBuilder(end - start);
+        boolean space = false;
+        for (int k = start; k < end; k++) {
+            char c = source.charAt(k);
+            if (Character.isWhitespace(c)) {
+                space = true;
+            } else {
+                if (space) {
+                    sb.append(' ');
+                    space = false;
+                }
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Renders tokens {@code [from, to)} as normalised source text: words are separated by a single
+     * space and commas are followed by one, everything else is joined directly.
+     */
+    String text(int from, int to) {
+        if (to - from == 1) {
+            return text(from);
+        }
+        StringBuilder sb = new StringBuilder(ends[to - 1] - starts[from]);
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                boolean words = kinds[i - 1] != PUNCT && kinds[i] != PUNCT;
+                boolean afterComma = is(i - 1, ',') && !is(i, ']');
+                if (words || afterComma) {
+                    sb.append(' ');
+                }
+            }
+            sb.append(source, starts[i], ends[i]);
+        }
+        return sb.toString();
+    }
+}
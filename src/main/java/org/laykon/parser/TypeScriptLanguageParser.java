@@ -1,35 +1,21 @@
 package org.laykon.parser;
 
 import org.laykon.model.*;
-import org.laykon.util.Debug;
+import org.laykon.source.SourceFile;
+import org.laykon.util.Log;
+import org.laykon.util.Metrics;
 
-import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class TypeScriptLanguageParser implements LanguageParser {
-    private static final Pattern TYPE_HEADER_PATTERN = Pattern.compile(
-            "\\b(class|interface|enum)\\s+(\\w+)\\s*([^\\{]*)\\{"
-    );
-    private static final Pattern TYPE_ALIAS_START_PATTERN = Pattern.compile(
-            "\\btype\\s+(\\w+)(?:\\s*<[^>]*>)?\\s*="
-    );
-    private static final Pattern EXTENDS_PATTERN = Pattern.compile("\\bextends\\s+([^\\{]+?)(?=\\bimplements\\b|$)");
-    private static final Pattern IMPLEMENTS_PATTERN = Pattern.compile("\\bimplements\\s+([^\\{]+)");
-    private static final Pattern METHOD_PATTERN = Pattern.compile(
-            "^(?:(?:public|private|protected|static|abstract|override|readonly|async)\\s+)*" +
-                    "(\\w+)\\s*\\(([^)]*)\\)\\s*(?::\\s*([^\\{;]+))?"
-    );
-    private static final Pattern FIELD_PATTERN = Pattern.compile(
-            "^(?:(?:public|private|protected|static|readonly|abstract)\\s+)*" +
-                    "(\\w+)\\??\\s*:\\s*([^=;]+)"
-    );
-    private static final Pattern ALIAS_FIELD_PATTERN = Pattern.compile(
-            "(\\w+)\\??\\s*:\\s*([^;\\}]+)"
-    );
+    private static final String[] MODIFIERS = {
+            "public", "private", "protected", "static", "abstract", "override", "readonly", "async",
+            "declare", "accessor"
+    };
+    private static final String[] PARAM_MODIFIERS = {
+            "public", "private", "protected", "readonly", "override"
+    };
     private static final Set<String> PRIMITIVES = Set.of(
             "string", "number", "boolean", "void", "any", "unknown", "never", "null", "undefined",
             "object", "bigint", "symbol"
@@ -41,402 +27,449 @@ public class TypeScriptLanguageParser implements LanguageParser {
     }
 
     @Override
-    public void parse(Path file, ModelRepository repo) {
-        try {
-            String content = Files.readString(file);
-            Debug.log("TS parse start: " + file + " (" + content.length() + " chars)");
-            content = removeComments(content);
-
-            parseTypeAliases(content, repo);
-
-            Matcher typeMatcher = TYPE_HEADER_PATTERN.matcher(content);
-            int lastIndex = 0;
-            while (typeMatcher.find(lastIndex)) {
-                String kindToken = typeMatcher.group(1);
-                String typeName = typeMatcher.group(2);
-                String headerRest = typeMatcher.group(3);
-
-                if ("class".equals(kindToken) && "extends".equals(typeName)) {
-                    lastIndex = typeMatcher.end();
-                    continue;
-                }
+    public String version() {
+        return "4";
+    }
 
-                TypeKind kind = TypeKind.CLASS;
-                if ("interface".equals(kindToken)) {
-                    kind = TypeKind.INTERFACE;
-                } else if ("enum".equals(kindToken)) {
-                    kind = TypeKind.ENUM;
-                }
+    @Override
+    public String context(Path file) {
+        return ModulePaths.typeScript(file);
+    }
 
-                TypeModel type = repo.getOrCreate(typeName, kind);
-                Debug.log("TS type " + typeName + " (" + kindToken + ")");
-
-                parseHeaderRelations(headerRest, type);
-                parseGenericConstraints(headerRest, type);
-
-                int bodyStart = content.indexOf('{', typeMatcher.end() - 1);
-                if (bodyStart >= 0) {
-                    int bodyEnd = findMatchingBrace(content, bodyStart);
-                    if (bodyEnd > bodyStart) {
-                        String body = content.substring(bodyStart + 1, bodyEnd);
-                        if (kind == TypeKind.ENUM) {
-                            parseEnumBody(body, type);
-                        } else {
-                            parseTypeBody(body, type);
-                        }
-                        lastIndex = bodyEnd;
-                        continue;
-                    }
-                }
-                lastIndex = typeMatcher.end();
+    @Override
+    public void parse(SourceFile source, ModelRepository repo) {
+        CharSequence content = source.text();
+        Log.debug(() -> "TS parse start: " + source.path() + " (" + content.length() + " chars)");
+        long start = Metrics.start();
+        TokenStream tokens = TypeScriptLexer.tokenize(content);
+        Metrics.stop(Metrics.Phase.LEX, start);
+        String module = ModulePaths.typeScript(source.path());
+
+        int i = 0;
+        while (i < tokens.size()) {
+            if (isTypeDeclaration(tokens, i)) {
+                i = parseTypeDeclaration(tokens, i, module, repo);
+            } else if (isTypeAlias(tokens, i)) {
+                i = parseTypeAlias(tokens, i, module, repo);
+            } else {
+                i++;
             }
+        }
+
+        Log.debug(() -> "TS parse done: " + source.path() + " (tokens: " + tokens.size() + ")");
+    }
 
-            Debug.log("TS parse done: " + file);
-        } catch (IOException e) {
-            e.printStackTrace();
+    private boolean isTypeDeclaration(TokenStream t, int i) {
+        if (!(t.is(i, "class") || t.is(i, "interface") || t.is(i, "enum")) || i > 0 && t.is(i - 1, '.')) {
+            return false;
         }
+        return t.isWord(i + 1) && !t.is(i + 1, "extends") && !t.is(i + 1, "implements");
     }
 
-    private void parseHeaderRelations(String headerRest, TypeModel type) {
-        String header = stripGenerics(headerRest);
-        Matcher extendsMatcher = EXTENDS_PATTERN.matcher(header);
-        if (extendsMatcher.find()) {
-            String extendPart = extendsMatcher.group(1).trim();
-            for (String base : splitTypes(extendPart)) {
-                String clean = cleanTypeName(base);
-                if (!clean.isEmpty()) {
-                    type.extendsTypes.add(clean);
-                    addDependencies(clean, type);
-                }
+    private boolean isTypeAlias(TokenStream t, int i) {
+        return t.is(i, "type") && t.isWord(i + 1) && (t.is(i + 2, '=') || t.is(i + 2, '<'))
+                && !(i > 0 && t.is(i - 1, '.'));
+    }
+
+    private int parseTypeDeclaration(TokenStream t, int keyword, String module, ModelRepository repo) {
+        TypeKind kind = TypeKind.CLASS;
+        if (t.is(keyword, "interface")) {
+            kind = TypeKind.INTERFACE;
+        } else if (t.is(keyword, "enum")) {
+            kind = TypeKind.ENUM;
+        }
+        String typeName = t.text(keyword + 1);
+        TypeModel type = repo.getOrCreate(module, typeName, kind);
+        if (kind == TypeKind.INTERFACE) {
+            // Interfaces of the same name merge, in TypeScript as here.
+            type.markPartial();
+        }
+        Log.trace(() -> "TS type " + typeName + " (" + t.text(keyword) + ")");
+
+        int i = keyword + 2;
+        int genericsEnd = -1;
+        if (t.is(i, '<')) {
+            genericsEnd = skipAngles(t, i, t.size());
+            i = genericsEnd < 0 ? i : genericsEnd;
+        }
+        while (i < t.size() && !t.is(i, '{') && !t.is(i, ';')) {
+            if (t.is(i, "extends")) {
+                i = parseHeaderTypes(t, i + 1, type, type.extendsTypes);
+            } else if (t.is(i, "implements")) {
+                i = parseHeaderTypes(t, i + 1, type, type.implementsTypes);
+            } else {
+                i = t.is(i, '(') || t.is(i, '[') ? t.skipGroup(i, t.size()) : i + 1;
             }
         }
-        Matcher implementsMatcher = IMPLEMENTS_PATTERN.matcher(header);
-        if (implementsMatcher.find()) {
-            String implPart = implementsMatcher.group(1).trim();
-            for (String impl : splitTypes(implPart)) {
-                String clean = cleanTypeName(impl);
+        if (genericsEnd > 0) {
+            parseGenericConstraints(t, keyword + 3, genericsEnd - 1, type);
+        }
+        if (!t.is(i, '{')) {
+            return i + 1;
+        }
+
+        int bodyEnd = t.skipGroup(i, t.size()) - 1;
+        if (kind == TypeKind.ENUM) {
+            parseEnumBody(t, i + 1, bodyEnd, type);
+        } else {
+            parseTypeBody(t, i + 1, bodyEnd, type);
+        }
+        return bodyEnd + 1;
+    }
+
+    /**
+     * Reads a comma separated {@code extends}/{@code implements} list, recording each entry without its type
+     * arguments, and returns the index of the token that ends the list.
+     */
+    private int parseHeaderTypes(TokenStream t, int i, TypeModel type, Set<String> relations) {
+        while (i < t.size()) {
+            int nameEnd = i;
+            while (t.isWord(nameEnd) && t.is(nameEnd + 1, '.') && t.isWord(nameEnd + 2)) {
+                nameEnd += 2;
+            }
+            if (t.isWord(nameEnd)) {
+                String clean = cleanTypeName(t.text(i, nameEnd + 1));
                 if (!clean.isEmpty()) {
-                    type.implementsTypes.add(clean);
+                    relations.add(clean);
                     addDependencies(clean, type);
                 }
             }
+            int j = nameEnd + 1;
+            while (j < t.size() && !t.is(j, ',') && !t.is(j, '{') && !t.is(j, ';')
+                    && !t.is(j, "implements") && !t.is(j, "extends")) {
+                if (t.is(j, '<')) {
+                    int end = skipAngles(t, j, t.size());
+                    j = end < 0 ? j + 1 : end;
+                } else {
+                    j = t.is(j, '(') || t.is(j, '[') ? t.skipGroup(j, t.size()) : j + 1;
+                }
+            }
+            if (!t.is(j, ',')) {
+                return j;
+            }
+            i = j + 1;
         }
+        return i;
     }
 
-    private void parseGenericConstraints(String headerRest, TypeModel type) {
-        int lt = headerRest.indexOf('<');
-        int gt = headerRest.lastIndexOf('>');
-        if (lt < 0 || gt < 0 || gt <= lt) {
-            return;
-        }
-        String generics = headerRest.substring(lt + 1, gt);
-        for (String part : generics.split(",")) {
-            String p = part.trim();
-            int ext = p.indexOf("extends");
-            if (ext >= 0) {
-                String bound = p.substring(ext + "extends".length()).trim();
-                for (String b : splitTypes(bound)) {
-                    String clean = cleanTypeName(b);
-                    if (!clean.isEmpty()) {
-                        addDependencies(clean, type);
+    private void parseGenericConstraints(TokenStream t, int from, int to, TypeModel type) {
+        int i = from;
+        while (i < to) {
+            int end = scanType(t, i, to, false);
+            for (int k = i; k < end; k++) {
+                if (t.is(k, "extends")) {
+                    int boundEnd = k + 1;
+                    while (boundEnd < end && !t.is(boundEnd, '=')) {
+                        boundEnd++;
+                    }
+                    for (String b : splitTypes(t.sourceText(k + 1, boundEnd))) {
+                        String clean = cleanTypeName(b);
+                        if (!clean.isEmpty()) {
+                            addDependencies(clean, type);
+                        }
                     }
+                    break;
                 }
             }
+            i = end + 1;
         }
     }
 
-    private void parseTypeBody(String body, TypeModel type) {
-        List<String> lines = splitTopLevelLines(body);
-        for (String raw : lines) {
-            String line = raw.replace('\n', ' ').trim();
-            if (line.isEmpty()) {
-                continue;
-            }
-            String lineNoModifiers = line.replaceAll("^(?:(?:public|private|protected|static|abstract|override|readonly|async)\\s+)*", "");
-            if (lineNoModifiers.startsWith("constructor(") || lineNoModifiers.startsWith("constructor ")) {
-                String paramsPart = extractParams(line);
-                List<ParamInfo> params = parseParamInfos(paramsPart);
-                List<String> paramTypes = new ArrayList<>();
-                for (ParamInfo p : params) {
-                    paramTypes.add(p.type);
-                    addDependencies(p.type, type);
-                    if (p.isProperty) {
-                        type.fields.add(new FieldModel(p.name, p.type));
-                        addDependencies(p.type, type);
-                    }
-                }
-                type.methods.add(new MethodModel(type.name, "void", paramTypes));
+    private void parseTypeBody(TokenStream t, int from, int to, TypeModel type) {
+        int i = from;
+        while (i < to) {
+            if (t.is(i, ';') || t.is(i, ',')) {
+                i++;
                 continue;
             }
+            int next = parseMember(t, i, to, type);
+            i = Math.max(next, i + 1);
+        }
+    }
 
-            if (line.startsWith("abstract ") && line.endsWith(";")) {
-                line = line.substring("abstract ".length()).trim();
+    private int parseMember(TokenStream t, int i, int to, TypeModel type) {
+        while (t.is(i, '@') && i < to) {
+            i++;
+            while (t.isWord(i) && t.is(i + 1, '.')) {
+                i += 2;
             }
-
-            if (line.contains("=") && line.contains("class")) {
-                continue;
+            i++;
+            if (t.is(i, '(')) {
+                i = t.skipGroup(i, to);
             }
+        }
+        while (i < to && isOneOf(t, i, MODIFIERS) && startsMemberName(t, i + 1)) {
+            i++;
+        }
+        if ((t.is(i, "get") || t.is(i, "set")) && startsMemberName(t, i + 1)) {
+            return skipMember(t, i, to);
+        }
+        if (t.is(i, '*')) {
+            i++;
+        }
 
-            Matcher methodMatcher = METHOD_PATTERN.matcher(line);
-            if (methodMatcher.find()) {
-                String methodName = methodMatcher.group(1);
-                String paramsPart = methodMatcher.group(2) == null ? "" : methodMatcher.group(2);
-                String returnType = methodMatcher.group(3) == null ? "void" : methodMatcher.group(3).trim();
-                List<String> params = parseParamTypes(paramsPart);
-                type.methods.add(new MethodModel(methodName, returnType, params));
-                addDependencies(returnType, type);
-                for (String p : params) {
-                    addDependencies(p, type);
+        if (t.is(i, "constructor") && t.is(i + 1, '(')) {
+            int close = t.skipGroup(i + 1, to);
+            List<String> paramTypes = new ArrayList<>();
+            for (ParamInfo p : parseParams(t, i + 2, close - 1)) {
+                paramTypes.add(p.type);
+                addDependencies(p.type, type);
+                if (p.isProperty) {
+                    type.fields.add(new FieldModel(p.name, p.type, t.line(i)));
+                    addDependencies(p.type, type);
                 }
-                continue;
             }
+            type.methods.add(new MethodModel(type.simpleName(), "void", paramTypes, t.line(i)));
+            return skipMember(t, close, to);
+        }
 
-            Matcher fieldMatcher = FIELD_PATTERN.matcher(line);
-            if (fieldMatcher.find()) {
-                String fieldName = fieldMatcher.group(1);
-                String fieldType = fieldMatcher.group(2).trim();
-                fieldType = trimTypeSuffix(fieldType);
-                type.fields.add(new FieldModel(fieldName, fieldType));
-                addDependencies(fieldType, type);
-            }
+        if (!t.isWord(i) && t.kind(i) != TokenStream.STRING && t.kind(i) != TokenStream.NUMBER) {
+            return skipMember(t, i, to);
+        }
+        String name = t.text(i);
+        int n = i + 1;
+        if (t.is(n, '?') || t.is(n, '!')) {
+            n++;
+        }
+        if (t.is(n, '<')) {
+            int end = skipAngles(t, n, to);
+            n = end < 0 ? n : end;
         }
-    }
 
-    private void parseTypeAliases(String content, ModelRepository repo) {
-        Matcher aliasMatcher = TYPE_ALIAS_START_PATTERN.matcher(content);
-        while (aliasMatcher.find()) {
-            String name = aliasMatcher.group(1);
-            int rhsStart = aliasMatcher.end();
-            int rhsEnd = findTypeAliasEnd(content, rhsStart);
-            if (rhsEnd < 0) {
-                continue;
+        if (t.is(n, '(')) {
+            int close = t.skipGroup(n, to);
+            List<String> params = new ArrayList<>();
+            for (ParamInfo p : parseParams(t, n + 1, close - 1)) {
+                params.add(p.type);
+            }
+            String returnType = "void";
+            int j = close;
+            if (t.is(j, ':')) {
+                int end = scanType(t, j + 1, to, true);
+                if (end > j + 1) {
+                    returnType = t.sourceText(j + 1, end);
+                }
+                j = end;
             }
-            String rhs = content.substring(rhsStart, rhsEnd).trim();
-            if (!rhs.contains("{")) {
-                continue;
+            type.methods.add(new MethodModel(name, returnType, params, t.line(i)));
+            addDependencies(returnType, type);
+            for (String p : params) {
+                addDependencies(p, type);
             }
-            TypeModel type = repo.getOrCreate(name, TypeKind.INTERFACE);
+            return skipMember(t, j, to);
+        }
 
-            int idx = 0;
-            while (idx < rhs.length()) {
-                int open = rhs.indexOf('{', idx);
-                if (open < 0) {
-                    break;
-                }
-                int close = findMatchingBrace(rhs, open);
-                if (close < 0) {
-                    break;
-                }
-                String body = rhs.substring(open + 1, close);
-                Matcher fieldMatcher = ALIAS_FIELD_PATTERN.matcher(body);
-                while (fieldMatcher.find()) {
-                    String fieldName = fieldMatcher.group(1);
-                    String fieldType = trimTypeSuffix(fieldMatcher.group(2).trim());
-                    type.fields.add(new FieldModel(fieldName, fieldType));
-                    addDependencies(fieldType, type);
-                }
-                idx = close + 1;
-            }
+        if (t.is(n, ':')) {
+            int end = scanType(t, n + 1, to, false);
+            String fieldType = trimTypeSuffix(t.sourceText(n + 1, end));
+            type.fields.add(new FieldModel(name, fieldType, t.line(i)));
+            addDependencies(fieldType, type);
+            return t.is(end, '=') ? skipMember(t, end, to) : end;
         }
+        return skipMember(t, n, to);
     }
 
-    private void parseEnumBody(String body, TypeModel type) {
-        String cleaned = body.replaceAll("\\s+", " ").trim();
-        if (cleaned.isEmpty()) {
-            return;
-        }
-        String[] parts = cleaned.split(",");
-        for (String part : parts) {
-            String entry = part.trim();
-            if (entry.isEmpty()) {
-                continue;
-            }
-            int eq = entry.indexOf('=');
-            if (eq >= 0) {
-                entry = entry.substring(0, eq).trim();
+    private boolean startsMemberName(TokenStream t, int i) {
+        return (t.isWord(i) || t.kind(i) == TokenStream.STRING || t.is(i, '[') || t.is(i, '*'))
+                && !t.lineBreakBefore(i);
+    }
+
+    private int parseTypeAlias(TokenStream t, int keyword, String module, ModelRepository repo) {
+        String name = t.text(keyword + 1);
+        int i = keyword + 2;
+        if (t.is(i, '<')) {
+            int end = skipAngles(t, i, t.size());
+            if (end < 0) {
+                return keyword + 1;
             }
-            if (!entry.isEmpty()) {
-                type.fields.add(new FieldModel(entry, ""));
+            i = end;
+        }
+        if (!t.is(i, '=')) {
+            return keyword + 1;
+        }
+        int rhsEnd = scanType(t, i + 1, t.size(), false);
+        TypeModel type = null;
+        for (int k = i + 1; k < rhsEnd; k++) {
+            if (t.is(k, '{')) {
+                if (type == null) {
+                    type = repo.getOrCreate(module, name, TypeKind.INTERFACE);
+                    Log.trace(() -> "TS type alias " + name);
+                }
+                int close = t.skipGroup(k, rhsEnd) - 1;
+                parseTypeBody(t, k + 1, close, type);
+                k = close;
             }
         }
+        return rhsEnd;
     }
 
-    private List<String> splitTopLevelLines(String body) {
-        List<String> lines = new ArrayList<>();
-        StringBuilder current = new StringBuilder();
-        int depth = 0;
-        int parenDepth = 0;
-        boolean inString = false;
-        char stringChar = '\0';
-
-        for (int i = 0; i < body.length(); i++) {
-            char c = body.charAt(i);
-
-            if (!inString) {
-                if (c == '"' || c == '\'' || c == '`') {
-                    inString = true;
-                    stringChar = c;
-                } else if (c == '{') {
-                    depth++;
-                } else if (c == '}') {
-                    depth = Math.max(0, depth - 1);
-                } else if (c == '(') {
-                    parenDepth++;
-                } else if (c == ')') {
-                    parenDepth = Math.max(0, parenDepth - 1);
-                }
-            } else {
-                if (c == stringChar && (i == 0 || body.charAt(i - 1) != '\\')) {
-                    inString = false;
-                }
+    private void parseEnumBody(TokenStream t, int from, int to, TypeModel type) {
+        int i = from;
+        while (i < to) {
+            if (!t.is(i, ',')) {
+                type.fields.add(new FieldModel(t.text(i), "", t.line(i)));
             }
-
-            if (c == '\n' && depth == 0 && parenDepth == 0) {
-                lines.add(current.toString());
-                current.setLength(0);
-            } else {
-                current.append(c);
+            while (i < to && !t.is(i, ',')) {
+                i = t.is(i, '(') || t.is(i, '[') || t.is(i, '{') ? t.skipGroup(i, to) : i + 1;
             }
+            i++;
         }
-
-        if (!current.isEmpty()) {
-            lines.add(current.toString());
-        }
-        return lines;
     }
 
-    private int findMatchingBrace(String content, int openIndex) {
-        int braceCount = 0;
-        boolean inString = false;
-        char stringChar = '\0';
-
-        for (int i = openIndex; i < content.length(); i++) {
-            char c = content.charAt(i);
-
-            if (!inString) {
-                if (c == '"' || c == '\'' || c == '`') {
-                    inString = true;
-                    stringChar = c;
-                } else if (c == '{') {
-                    braceCount++;
-                } else if (c == '}') {
-                    braceCount--;
-                    if (braceCount == 0) {
-                        return i;
-                    }
+    private List<ParamInfo> parseParams(TokenStream t, int from, int to) {
+        List<ParamInfo> infos = new ArrayList<>();
+        int i = from;
+        while (i < to) {
+            while (t.is(i, '@') && i < to) {
+                i += 2;
+                if (t.is(i, '(')) {
+                    i = t.skipGroup(i, to);
                 }
-            } else {
-                if (c == stringChar && (i == 0 || content.charAt(i - 1) != '\\')) {
-                    inString = false;
+            }
+            boolean isProperty = false;
+            while (i < to && isOneOf(t, i, PARAM_MODIFIERS) && !t.is(i + 1, ':') && !t.is(i + 1, ',')
+                    && !t.is(i + 1, '?') && i + 1 < to) {
+                isProperty = true;
+                i++;
+            }
+            if (t.is(i, "...")) {
+                i++;
+            }
+            int nameEnd = t.is(i, '{') || t.is(i, '[') ? t.skipGroup(i, to) : i + 1;
+            String name = i < to ? t.sourceText(i, nameEnd) : "";
+            int j = nameEnd;
+            if (t.is(j, '?')) {
+                j++;
+            }
+            String type = "any";
+            if (t.is(j, ':')) {
+                int end = scanType(t, j + 1, to, false);
+                if (end > j + 1) {
+                    type = trimTypeSuffix(t.sourceText(j + 1, end));
                 }
+                j = end;
             }
+            while (j < to && !t.is(j, ',')) {
+                j = t.is(j, '(') || t.is(j, '[') || t.is(j, '{') ? t.skipGroup(j, to) : j + 1;
+            }
+            if (!name.isEmpty()) {
+                infos.add(new ParamInfo(name, type, isProperty));
+            }
+            i = j + 1;
         }
-        return -1;
+        return infos;
     }
 
-    private int findTypeAliasEnd(String content, int start) {
-        int braceDepth = 0;
-        int angleDepth = 0;
-        int parenDepth = 0;
-        boolean inString = false;
-        char stringChar = '\0';
-
-        for (int i = start; i < content.length(); i++) {
-            char c = content.charAt(i);
-
-            if (!inString) {
-                if (c == '"' || c == '\'' || c == '`') {
-                    inString = true;
-                    stringChar = c;
-                } else if (c == '{') {
-                    braceDepth++;
-                } else if (c == '}') {
-                    braceDepth = Math.max(0, braceDepth - 1);
-                } else if (c == '<') {
-                    angleDepth++;
-                } else if (c == '>') {
-                    angleDepth = Math.max(0, angleDepth - 1);
-                } else if (c == '(') {
-                    parenDepth++;
-                } else if (c == ')') {
-                    parenDepth = Math.max(0, parenDepth - 1);
-                } else if (c == ';' && braceDepth == 0 && angleDepth == 0 && parenDepth == 0) {
-                    return i;
+    /**
+     * Scans a type expression starting at {@code from} and returns the index of the token that ends it:
+     * a {@code ;}, a top-level {@code ,}, {@code =} or closing bracket, or a line break the type cannot
+     * continue across. In a return type an opening brace that follows a complete type starts the body.
+     */
+    private int scanType(TokenStream t, int from, int to, boolean returnType) {
+        int depth = 0;
+        for (int j = from; j < to; j++) {
+            if (j > from && depth == 0 && t.lineBreakBefore(j) && !continuesType(t, j)) {
+                return j;
+            }
+            if (t.is(j, '<')) {
+                depth++;
+            } else if (t.is(j, '>')) {
+                if (depth > 0) {
+                    depth--;
+                } else {
+                    return j;
                 }
-            } else {
-                if (c == stringChar && (i == 0 || content.charAt(i - 1) != '\\')) {
-                    inString = false;
+            } else if (t.is(j, '(') || t.is(j, '[')) {
+                j = t.skipGroup(j, to) - 1;
+            } else if (t.is(j, '{')) {
+                if (returnType && depth == 0 && j > from && endsType(t, j - 1)) {
+                    return j;
                 }
+                j = t.skipGroup(j, to) - 1;
+            } else if (t.is(j, ';')) {
+                // Only reached outside braces, so even a stray '<' cannot carry the type past it.
+                return j;
+            } else if (depth == 0 && (t.is(j, ',') || t.is(j, '=') || t.is(j, ')')
+                    || t.is(j, '}') || t.is(j, ']'))) {
+                return j;
             }
         }
-        return -1;
+        return to;
+    }
+
+    private boolean continuesType(TokenStream t, int j) {
+        return t.is(j, '|') || t.is(j, '&') || t.is(j, '.') || t.is(j, "=>") || t.is(j, '[')
+                || t.is(j - 1, '|') || t.is(j - 1, '&') || t.is(j - 1, ':') || t.is(j - 1, "=>")
+                || t.is(j - 1, ',') || t.is(j - 1, '<') || t.is(j - 1, '?');
     }
 
-    private String removeComments(String content) {
-        content = content.replaceAll("(?s)/\\*.*?\\*/", "");
-        content = content.replaceAll("(?m)//.*$", "");
-        return content;
+    private boolean endsType(TokenStream t, int j) {
+        return t.isWord(j) || t.is(j, '>') || t.is(j, ')') || t.is(j, ']') || t.is(j, '}')
+                || t.kind(j) == TokenStream.STRING || t.kind(j) == TokenStream.NUMBER;
     }
 
-    private String extractParams(String line) {
-        int open = line.indexOf('(');
-        int close = line.indexOf(')');
-        if (open < 0 || close < 0 || close <= open) {
-            return "";
+    /**
+     * Skips the rest of a member: up to its {@code ;} or {@code ,}, past its block body, or to a line
+     * break where the member cannot continue.
+     */
+    private int skipMember(TokenStream t, int i, int to) {
+        for (int j = i; j < to; j++) {
+            if (j > i && t.lineBreakBefore(j) && !continuesExpression(t, j)) {
+                return j;
+            }
+            if (t.is(j, ';') || t.is(j, ',')) {
+                return j + 1;
+            }
+            if (t.is(j, '{')) {
+                int after = t.skipGroup(j, to);
+                if (j == i || !continuesExpression(t, j) || t.is(j - 1, ')')) {
+                    return after;
+                }
+                j = after - 1;
+            } else if (t.is(j, '(') || t.is(j, '[')) {
+                j = t.skipGroup(j, to) - 1;
+            }
         }
-        return line.substring(open + 1, close).trim();
+        return to;
     }
 
-    private List<String> parseParamTypes(String paramsPart) {
-        if (paramsPart.isEmpty()) {
-            return List.of();
+    private boolean continuesExpression(TokenStream t, int j) {
+        if (t.kind(j - 1) == TokenStream.PUNCT && !t.is(j - 1, ')') && !t.is(j - 1, ']') && !t.is(j - 1, '}')) {
+            return true;
         }
-        List<String> types = new ArrayList<>();
-        String[] parts = paramsPart.split(",");
-        for (String raw : parts) {
-            String p = raw.trim();
-            if (p.isEmpty()) {
-                continue;
-            }
-            p = p.replaceAll("^\\.{3}", "");
-            p = p.replaceAll("^(?:(?:public|private|protected|readonly)\\s+)+", "");
-            int colon = p.indexOf(':');
-            String type = colon >= 0 ? p.substring(colon + 1).trim() : "any";
-            int eq = type.indexOf('=');
-            if (eq >= 0) {
-                type = type.substring(0, eq).trim();
-            }
-            if (!type.isEmpty()) {
-                types.add(type);
+        return t.is(j, '.') || t.is(j, '?') || t.is(j, ':') || t.is(j, '=') || t.is(j, "=>")
+                || t.is(j, '|') || t.is(j, '&') || t.is(j, '+') || t.is(j, '-') || t.is(j, '/')
+                || t.is(j, '%') || t.is(j, '<') || t.is(j, '>') || t.is(j, ',');
+    }
+
+    private int skipAngles(TokenStream t, int i, int limit) {
+        int depth = 0;
+        for (int j = i; j < limit; j++) {
+            if (t.is(j, '<')) {
+                depth++;
+            } else if (t.is(j, '>')) {
+                if (--depth == 0) {
+                    return j + 1;
+                }
+            } else if (t.is(j, '(') || t.is(j, '[') || t.is(j, '{')) {
+                j = t.skipGroup(j, limit) - 1;
+            } else if (t.is(j, ';') || t.is(j, ')') || t.is(j, '}')) {
+                return -1;
             }
         }
-        return types;
+        return -1;
     }
 
-    private List<ParamInfo> parseParamInfos(String paramsPart) {
-        List<ParamInfo> infos = new ArrayList<>();
-        if (paramsPart.isEmpty()) {
-            return infos;
+    private boolean isOneOf(TokenStream t, int i, String[] words) {
+        if (!t.isWord(i)) {
+            return false;
         }
-        String[] parts = paramsPart.split(",");
-        for (String raw : parts) {
-            String p = raw.trim();
-            if (p.isEmpty()) {
-                continue;
+        for (String word : words) {
+            if (t.is(i, word)) {
+                return true;
             }
-            p = p.replaceAll("^\\.{3}", "");
-            int eq = p.indexOf('=');
-            String left = eq >= 0 ? p.substring(0, eq).trim() : p;
-            boolean isProperty = left.matches("^(?:(?:public|private|protected|readonly)\\s+)+.*");
-            left = left.replaceAll("^(?:(?:public|private|protected|readonly)\\s+)+", "");
-            int colon = left.indexOf(':');
-            String name = colon >= 0 ? left.substring(0, colon).trim() : left.trim();
-            String type = colon >= 0 ? left.substring(colon + 1).trim() : "any";
-            name = name.replace("?", "").trim();
-            type = trimTypeSuffix(type);
-            infos.add(new ParamInfo(name, type, isProperty));
         }
-        return infos;
+        return false;
     }
 
     private String trimTypeSuffix(String type) {
@@ -453,10 +486,9 @@ public class TypeScriptLanguageParser implements LanguageParser {
         int last = 0;
         for (int i = 0; i < typeList.length(); i++) {
             char c = typeList.charAt(i);
-            if (c == '<') {
-                depth++;
-            } else if (c == '>') {
-                depth--;
+            int change = nesting(typeList, i);
+            if (change != 0) {
+                depth += change;
             } else if (c == ',' && depth == 0) {
                 parts.add(typeList.substring(last, i).trim());
                 last = i + 1;
@@ -469,28 +501,12 @@ public class TypeScriptLanguageParser implements LanguageParser {
         return parts;
     }
 
-    private String stripGenerics(String headerRest) {
-        StringBuilder sb = new StringBuilder();
-        int depth = 0;
-        for (int i = 0; i < headerRest.length(); i++) {
-            char c = headerRest.charAt(i);
-            if (c == '<') {
-                depth++;
-            } else if (c == '>') {
-                depth = Math.max(0, depth - 1);
-            } else if (depth == 0) {
-                sb.append(c);
-            }
-        }
-        return sb.toString();
-    }
-
     private void addDependencies(String typeName, TypeModel type) {
         if (typeName == null || typeName.isBlank()) {
             return;
         }
         for (String dep : extractTypeNames(typeName)) {
-            if (!isPrimitiveType(dep) && !dep.equals(type.name) &&
+            if (!isPrimitiveType(dep) && !dep.equals(type.simpleName()) && !dep.equals(type.name) &&
                     !type.extendsTypes.contains(dep) && !type.implementsTypes.contains(dep)) {
                 type.dependencies.add(dep);
             }
@@ -506,38 +522,93 @@ public class TypeScriptLanguageParser implements LanguageParser {
 
         for (String part : splitUnion(cleaned)) {
             String base = part.trim();
-            if (base.endsWith("[]")) {
+            while (base.endsWith("[]")) {
                 base = base.substring(0, base.length() - 2).trim();
             }
+            if (base.startsWith("new ")) {
+                base = base.substring("new ".length()).trim();
+            }
+            if (base.startsWith("<")) {
+                // Type parameters of a generic function type, declared rather than used.
+                int close = closing(base, 0);
+                base = close < 0 ? "" : base.substring(close + 1).trim();
+            }
+            if (base.startsWith("(")) {
+                int close = closing(base, 0);
+                if (close < 0) {
+                    continue;
+                }
+                String inner = base.substring(1, close);
+                String rest = base.substring(close + 1).trim();
+                if (rest.startsWith("=>")) {
+                    // A function type: its parameter types and its return type.
+                    for (String param : splitTypes(inner)) {
+                        int colon = param.indexOf(':');
+                        if (colon >= 0) {
+                            result.addAll(extractTypeNames(param.substring(colon + 1)));
+                        }
+                    }
+                    result.addAll(extractTypeNames(rest.substring(2)));
+                } else {
+                    result.addAll(extractTypeNames(inner));
+                }
+                continue;
+            }
             int lt = base.indexOf('<');
             if (lt < 0) {
-                result.add(base);
+                if (!base.isEmpty()) {
+                    result.add(base);
+                }
                 continue;
             }
             String outer = base.substring(0, lt).trim();
             if (!outer.isEmpty()) {
                 result.add(outer);
             }
-            String inner = base.substring(lt + 1, base.lastIndexOf('>')).trim();
-            if (!inner.isEmpty()) {
-                for (String arg : splitTypes(inner)) {
-                    result.addAll(extractTypeNames(arg));
-                }
+            int gt = closing(base, lt);
+            if (gt < 0) {
+                continue;
+            }
+            for (String arg : splitTypes(base.substring(lt + 1, gt))) {
+                result.addAll(extractTypeNames(arg));
             }
         }
         return result;
     }
 
+    // +1 for an opening bracket, -1 for a closing one; the '>' of a function type's "=>" closes nothing.
+    private static int nesting(String type, int i) {
+        char c = type.charAt(i);
+        if (c == '<' || c == '(' || c == '[' || c == '{') {
+            return 1;
+        }
+        if (c == '>') {
+            return i > 0 && type.charAt(i - 1) == '=' ? 0 : -1;
+        }
+        return c == ')' || c == ']' || c == '}' ? -1 : 0;
+    }
+
+    // The index of the bracket closing the one at open, or -1 when it is never closed.
+    private static int closing(String type, int open) {
+        int depth = 0;
+        for (int i = open; i < type.length(); i++) {
+            depth += nesting(type, i);
+            if (depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     private List<String> splitUnion(String typeName) {
         List<String> parts = new ArrayList<>();
         int depth = 0;
         int last = 0;
         for (int i = 0; i < typeName.length(); i++) {
             char c = typeName.charAt(i);
-            if (c == '<') {
-                depth++;
-            } else if (c == '>') {
-                depth--;
+            int change = nesting(typeName, i);
+            if (change != 0) {
+                depth += change;
             } else if ((c == '|' || c == '&') && depth == 0) {
                 parts.add(typeName.substring(last, i).trim());
                 last = i + 1;
@@ -552,11 +623,24 @@ public class TypeScriptLanguageParser implements LanguageParser {
 
     private String cleanTypeName(String typeName) {
         String cleaned = typeName.trim();
-        cleaned = cleaned.replace("?", "");
-        cleaned = cleaned.replace("readonly ", "");
-        cleaned = cleaned.replaceAll("\"[^\"]*\"", "");
-        cleaned = cleaned.replaceAll("'[^']*'", "");
-        return cleaned.trim();
+        if (cleaned.startsWith("readonly ")) {
+            cleaned = cleaned.substring("readonly ".length());
+        }
+        StringBuilder sb = new StringBuilder(cleaned.length());
+        for (int i = 0; i < cleaned.length(); i++) {
+            char c = cleaned.charAt(i);
+            if (c == '"' || c == '\'') {
+                int close = cleaned.indexOf(c, i + 1);
+                if (close > i) {
+                    i = close;
+                    continue;
+                }
+            }
+            if (c != '?') {
+                sb.append(c);
+            }
+        }
+        return sb.toString().trim();
     }
 
     private boolean isPrimitiveType(String type) {
@@ -0,0 +1,176 @@
+package org.laykon.parser;
+
+/**
+ * Single-pass TypeScript tokenizer. Comments are dropped, string, template and regular expression
+ * literals each become one {@link TokenStream#STRING} token (template literals including any
+ * {@code ${...}} substitutions, however deeply nested), and brackets are matched as they are read.
+ */
+final class TypeScriptLexer {
+    private static final String[] REGEX_PRECEDING_WORDS = {
+            "return", "typeof", "case", "do", "else", "in", "of", "new", "delete", "void", "throw",
+            "instanceof", "yield", "await"
+    };
+
+    private TypeScriptLexer() {
+    }
+
+    static TokenStream tokenize(CharSequence src) {
+        TokenStream tokens = new TokenStream(src);
+        int length = src.length();
+        int i = 0;
+        while (i < length) {
+            char c = src.charAt(i);
+            if (Character.isWhitespace(c) || c == '\uFEFF') {
+                i++;
+                continue;
+            }
+            char next = i + 1 < length ? src.charAt(i + 1) : '\0';
+            if (c == '/' && next == '/') {
+                i = skipLine(src, i);
+            } else if (c == '/' && next == '*') {
+                i = skipBlockComment(src, i);
+            } else if (c == '"' || c == '\'' || c == '`') {
+                int end = skipLiteral(src, i);
+                tokens.add(TokenStream.STRING, i, end + 1);
+                i = end + 1;
+            } else if (c == '/' && regexAllowed(tokens)) {
+                int end = skipRegex(src, i);
+                tokens.add(TokenStream.STRING, i, end + 1);
+                i = end + 1;
+            } else if (isIdentifierStart(c) || c == '#' && isIdentifierStart(next)) {
+                int start = i++;
+                while (i < length && isIdentifierPart(src.charAt(i))) {
+                    i++;
+                }
+                tokens.add(TokenStream.WORD, start, i);
+            } else if (Character.isDigit(c) || c == '.' && Character.isDigit(next)) {
+                int start = i++;
+                while (i < length && (isIdentifierPart(src.charAt(i)) || src.charAt(i) == '.')) {
+                    i++;
+                }
+                tokens.add(TokenStream.NUMBER, start, i);
+            } else if (c == '=' && next == '>') {
+                tokens.add(TokenStream.PUNCT, i, i + 2);
+                i += 2;
+            } else if (c == '.' && next == '.' && i + 2 < length && src.charAt(i + 2) == '.') {
+                tokens.add(TokenStream.PUNCT, i, i + 3);
+                i += 3;
+            } else {
+                tokens.add(TokenStream.PUNCT, i, i + 1);
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean regexAllowed(TokenStream tokens) {
+        int last = tokens.size() - 1;
+        if (last < 0) {
+            return true;
+        }
+        if (tokens.kind(last) == TokenStream.PUNCT) {
+            return !tokens.is(last, ')') && !tokens.is(last, ']') && !tokens.is(last, '}');
+        }
+        if (tokens.kind(last) == TokenStream.WORD) {
+            for (String word : REGEX_PRECEDING_WORDS) {
+                if (tokens.is(last, word)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == '$';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static int skipLine(CharSequence src, int i) {
+        while (i < src.length() && src.charAt(i) != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipBlockComment(CharSequence src, int i) {
+        for (int k = i + 2; k + 1 < src.length(); k++) {
+            if (src.charAt(k) == '*' && src.charAt(k + 1) == '/') {
+                return k + 2;
+            }
+        }
+        return src.length();
+    }
+
+    /**
+     * Returns the index of the closing quote of the string or template literal starting at {@code start},
+     * or the last index when it is unterminated.
+     */
+    private static int skipLiteral(CharSequence src, int start) {
+        char quote = src.charAt(start);
+        int length = src.length();
+        for (int i = start + 1; i < length; i++) {
+            char c = src.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == quote) {
+                return i;
+            } else if (quote == '`' && c == '$' && i + 1 < length && src.charAt(i + 1) == '{') {
+                i = skipSubstitution(src, i + 2);
+            } else if (c == '\n' && quote != '`') {
+                return i - 1;
+            }
+        }
+        return length - 1;
+    }
+
+    private static int skipSubstitution(CharSequence src, int start) {
+        int depth = 0;
+        int length = src.length();
+        for (int i = start; i < length; i++) {
+            char c = src.charAt(i);
+            char next = i + 1 < length ? src.charAt(i + 1) : '\0';
+            if (c == '"' || c == '\'' || c == '`') {
+                i = skipLiteral(src, i);
+            } else if (c == '/' && next == '/') {
+                i = skipLine(src, i);
+            } else if (c == '/' && next == '*') {
+                i = skipBlockComment(src, i) - 1;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            }
+        }
+        return length - 1;
+    }
+
+    private static int skipRegex(CharSequence src, int start) {
+        int length = src.length();
+        boolean inClass = false;
+        for (int i = start + 1; i < length; i++) {
+            char c = src.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '/' && !inClass) {
+                while (i + 1 < length && Character.isLetter(src.charAt(i + 1))) {
+                    i++;
+                }
+                return i;
+            } else if (c == '\n') {
+                return i - 1;
+            }
+        }
+        return length - 1;
+    }
+}
@@ -0,0 +1,393 @@
+package org.laykon.snapshot;
+
+import org.laykon.model.*;
+import org.laykon.util.Log;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Binary snapshot of a whole {@link ModelRepository}, so diagrams can be generated again without the sources.
+ * <p>
+ * Every string is stored once in a table up front and referred to by index everywhere else; all numbers are
+ * big-endian ints. Snapshots are written through a file channel and read back from a memory-mapped buffer.
+ * The model is stored per source file, so a loaded repository keeps the provenance of every member.
+ * <pre>
+ * magic, version
+ * string count, { byte length, UTF-8 bytes }
+ * type count, { name, namespace, kind }
+ * source count, { path, type count, { type, partial, body } }
+ * unattributed type count, { type, body }
+ * body: field count, { name, type, line }, method count, { name, return type, parameter count, { parameter }, line },
+ *       then extends, implements and dependencies, each as count, { name }
+ * </pre>
+ * Strings are table indexes, {@code -1} standing for {@code null}; types are indexes into the type list.
+ */
+public final class ModelSnapshot {
+
+    private static final int MAGIC = 0x4c4b534e;
+    private static final int FORMAT_VERSION = 3;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private ModelSnapshot() {
+    }
+
+    /**
+     * Whether {@code file} starts like a snapshot, of whatever version.
+     */
+    public static boolean isSnapshot(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // Short files leave the buffer incomplete.
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes {@code repo} to {@code file}, replacing it only once the snapshot is complete. The repository
+     * must not change while it is being written.
+     */
+    public static void save(Path file, ModelRepository repo) throws IOException {
+        Log.debug(() -> "Saving snapshot " + file);
+        TypeModel[] types = repo.all().toArray(new TypeModel[0]);
+        Map<TypeModel, Integer> typeIndex = new IdentityHashMap<>(types.length * 2);
+        for (TypeModel t : types) {
+            typeIndex.put(t, typeIndex.size());
+        }
+        // What each file contributed, per file in merge order and per type in repository order.
+        Map<Path, List<TypeModel>> owners = new LinkedHashMap<>();
+        Map<Path, List<TypeModel>> contributions = new LinkedHashMap<>();
+        for (Path source : repo.sources()) {
+            owners.put(source, new ArrayList<>());
+            contributions.put(source, new ArrayList<>());
+        }
+        List<TypeModel> unattributed = new ArrayList<>();
+        for (TypeModel t : types) {
+            Set<Path> sources = t.sources();
+            if (sources.isEmpty()) {
+                unattributed.add(t);
+            }
+            for (Path source : sources) {
+                TypeModel contribution = t.contribution(source);
+                if (contribution != null && owners.containsKey(source)) {
+                    owners.get(source).add(t);
+                    contributions.get(source).add(contribution);
+                }
+            }
+        }
+
+        StringTable strings = new StringTable();
+        for (TypeModel t : types) {
+            strings.add(t.name);
+            strings.add(t.namespace);
+        }
+        for (TypeModel t : unattributed) {
+            strings.addBody(t);
+        }
+        contributions.forEach((source, bodies) -> {
+            strings.add(source.toString());
+            for (TypeModel body : bodies) {
+                strings.addBody(body);
+            }
+        });
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Output out = new Output(FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))) {
+            out.putInt(MAGIC);
+            out.putInt(FORMAT_VERSION);
+            strings.write(out);
+
+            out.putInt(types.length);
+            for (TypeModel t : types) {
+                out.putInt(strings.index(t.name));
+                out.putInt(strings.index(t.namespace));
+                out.putInt(t.kind().ordinal());
+            }
+
+            out.putInt(contributions.size());
+            for (Map.Entry<Path, List<TypeModel>> e : contributions.entrySet()) {
+                List<TypeModel> bodies = e.getValue();
+                List<TypeModel> bodyOwners = owners.get(e.getKey());
+                out.putInt(strings.index(e.getKey().toString()));
+                out.putInt(bodies.size());
+                for (int i = 0; i < bodies.size(); i++) {
+                    out.putInt(typeIndex.get(bodyOwners.get(i)));
+                    out.putInt(bodies.get(i).isPartial() ? 1 : 0);
+                    writeBody(out, strings, bodies.get(i));
+                }
+            }
+
+            out.putInt(unattributed.size());
+            for (TypeModel t : unattributed) {
+                out.putInt(typeIndex.get(t));
+                writeBody(out, strings, t);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads a snapshot back into a new repository with the same types, members, relations and sources.
+     */
+    public static ModelRepository load(Path file) throws IOException {
+        Log.debug(() -> "Loading snapshot " + file);
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (in.remaining() < 8 || in.getInt() != MAGIC) {
+                throw new IOException("Not a model snapshot: " + file);
+            }
+            int version = in.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported model snapshot version " + version + ": " + file);
+            }
+            String[] strings = readStrings(in);
+
+            ModelRepository repo = new ModelRepository();
+            TypeKind[] kinds = TypeKind.values();
+            int types = in.getInt();
+            String[] namespaces = new String[types];
+            String[] localNames = new String[types];
+            TypeKind[] typeKinds = new TypeKind[types];
+            for (int i = 0; i < localNames.length; i++) {
+                String name = strings[in.getInt()];
+                namespaces[i] = strings[in.getInt()];
+                localNames[i] = namespaces[i].isEmpty() ? name : name.substring(namespaces[i].length() + 1);
+                typeKinds[i] = kinds[in.getInt()];
+                // Created up front so the repository keeps the saved type order.
+                repo.getOrCreate(namespaces[i], localNames[i], typeKinds[i]);
+            }
+
+            int sourceCount = in.getInt();
+            for (int s = 0; s < sourceCount; s++) {
+                Path source = Paths.get(strings[in.getInt()]);
+                ModelRepository fragment = new ModelRepository();
+                int typeCount = in.getInt();
+                for (int i = 0; i < typeCount; i++) {
+                    int type = in.getInt();
+                    TypeModel t = fragment.getOrCreate(namespaces[type], localNames[type], typeKinds[type]);
+                    if (in.getInt() != 0) {
+                        t.markPartial();
+                    }
+                    readBody(in, strings, t);
+                }
+                repo.merge(source, ModelFragment.of(fragment));
+            }
+
+            int unattributed = in.getInt();
+            for (int i = 0; i < unattributed; i++) {
+                int type = in.getInt();
+                readBody(in, strings, repo.getOrCreate(namespaces[type], localNames[type], typeKinds[type]));
+            }
+            return repo;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt model snapshot: " + file, e);
+        }
+    }
+
+    private static void writeBody(Output out, StringTable strings, TypeModel t) throws IOException {
+        FieldModel[] fields = t.fields.toArray(new FieldModel[0]);
+        out.putInt(fields.length);
+        for (FieldModel f : fields) {
+            out.putInt(strings.index(f.name));
+            out.putInt(strings.index(f.type));
+            out.putInt(f.line);
+        }
+        MethodModel[] methods = t.methods.toArray(new MethodModel[0]);
+        out.putInt(methods.length);
+        for (MethodModel m : methods) {
+            out.putInt(strings.index(m.name));
+            out.putInt(strings.index(m.returnType));
+            out.putInt(m.parameters.size());
+            for (String p : m.parameters) {
+                out.putInt(strings.index(p));
+            }
+            out.putInt(m.line);
+        }
+        writeRelations(out, strings, t.extendsTypes);
+        writeRelations(out, strings, t.implementsTypes);
+        writeRelations(out, strings, t.dependencies);
+    }
+
+    private static void writeRelations(Output out, StringTable strings, Set<String> relations) throws IOException {
+        String[] values = relations.toArray(new String[0]);
+        out.putInt(values.length);
+        for (String v : values) {
+            out.putInt(strings.index(v));
+        }
+    }
+
+    private static void readBody(ByteBuffer in, String[] strings, TypeModel t) {
+        int fieldCount = in.getInt();
+        for (int i = 0; i < fieldCount; i++) {
+            String name = string(strings, in.getInt());
+            String type = string(strings, in.getInt());
+            t.fields.add(new FieldModel(name, type, in.getInt()));
+        }
+        int methodCount = in.getInt();
+        for (int i = 0; i < methodCount; i++) {
+            String name = string(strings, in.getInt());
+            String returnType = string(strings, in.getInt());
+            String[] params = new String[in.getInt()];
+            for (int p = 0; p < params.length; p++) {
+                params[p] = string(strings, in.getInt());
+            }
+            t.methods.add(new MethodModel(name, returnType, Arrays.asList(params), in.getInt()));
+        }
+        readRelations(in, strings, t.extendsTypes);
+        readRelations(in, strings, t.implementsTypes);
+        readRelations(in, strings, t.dependencies);
+    }
+
+    private static void readRelations(ByteBuffer in, String[] strings, Set<String> target) {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            target.add(string(strings, in.getInt()));
+        }
+    }
+
+    private static String[] readStrings(ByteBuffer in) {
+        String[] strings = new String[in.getInt()];
+        byte[] scratch = new byte[256];
+        for (int i = 0; i < strings.length; i++) {
+            int length = in.getInt();
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            in.get(scratch, 0, length);
+            // Canonical instances, so the model constructors' own interning is a plain lookup.
+            strings[i] = Symbols.intern(new String(scratch, 0, length, StandardCharsets.UTF_8));
+        }
+        return strings;
+    }
+
+    private static String string(String[] strings, int index) {
+        return index < 0 ? null : strings[index];
+    }
+
+    /**
+     * Distinct strings of a model in first-seen order.
+     */
+    private static final class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        void add(String s) {
+            if (s != null && !indexes.containsKey(s)) {
+                indexes.put(s, values.size());
+                values.add(s);
+            }
+        }
+
+        void addBody(TypeModel t) {
+            for (FieldModel f : t.fields.toArray(new FieldModel[0])) {
+                add(f.name);
+                add(f.type);
+            }
+            for (MethodModel m : t.methods.toArray(new MethodModel[0])) {
+                add(m.name);
+                add(m.returnType);
+                for (String p : m.parameters) {
+                    add(p);
+                }
+            }
+            for (String s : t.extendsTypes.toArray(new String[0])) {
+                add(s);
+            }
+            for (String s : t.implementsTypes.toArray(new String[0])) {
+                add(s);
+            }
+            for (String s : t.dependencies.toArray(new String[0])) {
+                add(s);
+            }
+        }
+
+        int index(String s) {
+            return s == null ? -1 : indexes.get(s);
+        }
+
+        void write(Output out) throws IOException {
+            out.putInt(values.size());
+            for (String s : values) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.putInt(bytes.length);
+                out.put(bytes);
+            }
+        }
+    }
+
+    /**
+     * Fixed-size buffer in front of a file channel.
+     */
+    private static final class Output implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < Integer.BYTES) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            if (buffer.remaining() < bytes.length) {
+                flush();
+                if (bytes.length > buffer.capacity()) {
+                    drain(ByteBuffer.wrap(bytes));
+                    return;
+                }
+            }
+            buffer.put(bytes);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            drain(buffer);
+            buffer.clear();
+        }
+
+        private void drain(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
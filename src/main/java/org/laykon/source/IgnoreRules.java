@@ -0,0 +1,201 @@
+package org.laykon.source;
+
+import org.laykon.util.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Exclude patterns in {@code .gitignore} syntax, scoped to the directory that declares them. Rules of a
+ * deeper directory take precedence over those of its ancestors, and within one set the last matching rule
+ * wins, so {@code !pattern} can re-include what an earlier rule excluded. A directory that is excluded is
+ * never entered, so nothing below it can be re-included.
+ * <p>
+ * Supported: blank lines and {@code #} comments, {@code !} negation, a trailing {@code /} for directories
+ * only, patterns anchored to their directory by a leading or inner {@code /}, and the {@code *}, {@code ?},
+ * {@code **} and {@code [...]} wildcards. A pattern without a {@code /} matches a name at any depth.
+ */
+final class IgnoreRules {
+
+    /**
+     * Dependency, tool and build output directories, skipped unless disabled. Build output is only skipped
+     * at the top of the scan, as {@code bin}, {@code obj} and {@code build} deeper down are as likely to
+     * be packages with sources.
+     */
+    static final List<String> DEFAULTS = List.of(
+            ".git/", "node_modules/", "/bin/", "/obj/", "/build/", "venv/", ".venv/", "__pycache__/"
+    );
+
+    static final IgnoreRules NONE = new IgnoreRules(null, "", new Rule[0]);
+
+    private final IgnoreRules parent;
+    // Path of the declaring directory relative to the scan root, empty or ending with '/'.
+    private final String base;
+    private final Rule[] rules;
+
+    private IgnoreRules(IgnoreRules parent, String base, Rule[] rules) {
+        this.parent = parent;
+        this.base = base;
+        this.rules = rules;
+    }
+
+    /**
+     * These rules followed by {@code patterns}, declared for the directory at {@code base}.
+     */
+    IgnoreRules with(String base, List<String> patterns) {
+        List<Rule> parsed = new ArrayList<>();
+        for (String line : patterns) {
+            Rule rule = Rule.parse(line);
+            if (rule != null) {
+                parsed.add(rule);
+            }
+        }
+        return parsed.isEmpty() ? this : new IgnoreRules(this, base, parsed.toArray(new Rule[0]));
+    }
+
+    /**
+     * Checks that {@code pattern} compiles.
+     *
+     * @throws PatternSyntaxException if it has a malformed bracket set
+     */
+    static void check(String pattern) {
+        Rule.compile(pattern);
+    }
+
+    /**
+     * These rules followed by those of the {@code .gitignore} in {@code dir}, if it has one.
+     */
+    IgnoreRules withGitignore(Path dir, String base) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(dir.resolve(".gitignore"), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return this;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return this;
+        }
+        return with(base, lines);
+    }
+
+    /**
+     * Whether the entry at {@code path}, relative to the scan root with {@code /} separators, is excluded.
+     */
+    boolean ignores(String path, String name, boolean directory) {
+        for (IgnoreRules level = this; level != null; level = level.parent) {
+            for (int i = level.rules.length - 1; i >= 0; i--) {
+                Rule rule = level.rules[i];
+                if (rule.matches(path.substring(level.base.length()), name, directory)) {
+                    return !rule.negated;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static final class Rule {
+        private final Pattern pattern;
+        private final boolean negated;
+        private final boolean directoryOnly;
+        private final boolean anchored;
+
+        private Rule(Pattern pattern, boolean negated, boolean directoryOnly, boolean anchored) {
+            this.pattern = pattern;
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+            this.anchored = anchored;
+        }
+
+        /**
+         * The rule for one line, or {@code null} for a blank line, a comment or, as git does, a pattern
+         * with a malformed bracket set.
+         */
+        static Rule parse(String line) {
+            try {
+                return compile(line);
+            } catch (PatternSyntaxException e) {
+                Log.warn(() -> "Skipping malformed ignore pattern " + line.strip() + ": " + e.getDescription());
+                return null;
+            }
+        }
+
+        static Rule compile(String line) {
+            String p = line.strip();
+            if (p.isEmpty() || p.startsWith("#")) {
+                return null;
+            }
+            boolean negated = p.startsWith("!");
+            if (negated) {
+                p = p.substring(1);
+            }
+            boolean directoryOnly = p.endsWith("/");
+            if (directoryOnly) {
+                p = p.substring(0, p.length() - 1);
+            }
+            boolean anchored = p.indexOf('/') >= 0;
+            if (p.startsWith("/")) {
+                p = p.substring(1);
+            }
+            if (p.isEmpty()) {
+                return null;
+            }
+            return new Rule(Pattern.compile(toRegex(p)), negated, directoryOnly, anchored);
+        }
+
+        boolean matches(String relative, String name, boolean directory) {
+            if (directoryOnly && !directory) {
+                return false;
+            }
+            return pattern.matcher(anchored ? relative : name).matches();
+        }
+
+        private static String toRegex(String glob) {
+            StringBuilder regex = new StringBuilder(glob.length() + 16);
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if (c == '*' && glob.startsWith("**", i)) {
+                    boolean wholeSegment = (i == 0 || glob.charAt(i - 1) == '/')
+                            && (i + 2 == glob.length() || glob.charAt(i + 2) == '/');
+                    if (wholeSegment && i + 2 < glob.length()) {
+                        // "**/" is any number of leading directories, including none.
+                        regex.append("(?:.*/)?");
+                        i += 2;
+                    } else {
+                        regex.append(".*");
+                        i++;
+                    }
+                } else if (c == '*') {
+                    regex.append("[^/]*");
+                } else if (c == '?') {
+                    regex.append("[^/]");
+                } else if (c == '[') {
+                    int close = glob.indexOf(']', i + 2);
+                    if (close < 0) {
+                        regex.append("\\[");
+                    } else {
+                        String set = glob.substring(i + 1, close);
+                        if (set.startsWith("!")) {
+                            set = "^" + set.substring(1);
+                        }
+                        regex.append('[').append(set.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                        i = close;
+                    }
+                } else if (c == '\\' && i + 1 < glob.length()) {
+                    regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                } else if (Character.isLetterOrDigit(c) || c == '/' || c == '_' || c == '-') {
+                    regex.append(c);
+                } else {
+                    regex.append('\\').append(c);
+                }
+            }
+            return regex.toString();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package org.laykon.source;
+
+import org.laykon.util.Metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A source file loaded once and shared by the parse cache and the language parsers. Large files are
+ * memory-mapped rather than copied onto the heap; see {@link #setMapThreshold}. The charset comes from a byte order mark when there is
+ * one, UTF-16 without a mark is recognised by its zero bytes, and anything else is read as UTF-8 with
+ * malformed input replaced.
+ */
+public final class SourceFile {
+
+    static final long MAP_THRESHOLD = 64 * 1024;
+    // Files decoded into larger buffers get one of their own, so no thread holds on to one after an outlier.
+    static final int MAX_DECODE_BUFFER = 1 << 20;
+
+    private static volatile long mapThreshold = MAP_THRESHOLD;
+
+    // Decoding target reused by every file a thread parses; grown to the largest file seen, up to the cap.
+    private static final ThreadLocal<char[]> DECODE_BUFFER = ThreadLocal.withInitial(() -> new char[16 * 1024]);
+
+    private final Path path;
+    private final ByteBuffer bytes;
+    private final Charset charset;
+    private final int contentStart;
+
+    private SourceFile(Path path, ByteBuffer bytes) {
+        this.path = path;
+        this.bytes = bytes;
+        int b0 = bytes.limit() > 0 ? bytes.get(0) & 0xFF : -1;
+        int b1 = bytes.limit() > 1 ? bytes.get(1) & 0xFF : -1;
+        int b2 = bytes.limit() > 2 ? bytes.get(2) & 0xFF : -1;
+        if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+            charset = StandardCharsets.UTF_8;
+            contentStart = 3;
+        } else if (b0 == 0xFE && b1 == 0xFF) {
+            charset = StandardCharsets.UTF_16BE;
+            contentStart = 2;
+        } else if (b0 == 0xFF && b1 == 0xFE) {
+            charset = StandardCharsets.UTF_16LE;
+            contentStart = 2;
+        } else if (b0 == 0 && b1 > 0) {
+            charset = StandardCharsets.UTF_16BE;
+            contentStart = 0;
+        } else if (b0 > 0 && b1 == 0) {
+            charset = StandardCharsets.UTF_16LE;
+            contentStart = 0;
+        } else {
+            charset = StandardCharsets.UTF_8;
+            contentStart = 0;
+        }
+    }
+
+    public static SourceFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= mapThreshold) {
+                return new SourceFile(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+        }
+        return new SourceFile(path, ByteBuffer.wrap(Files.readAllBytes(path)));
+    }
+
+    /**
+     * Files of at least {@code bytes} are mapped, smaller ones read onto the heap. A mapping lives until the
+     * buffer is collected, which in a long-running process keeps files open and, on some systems, locked
+     * against the edits being watched; such a process raises the threshold to map only the largest files.
+     */
+    public static void setMapThreshold(long bytes) {
+        mapThreshold = bytes;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public Charset charset() {
+        return charset;
+    }
+
+    /**
+     * The raw file content, byte order mark included, as a read-only view positioned at the start.
+     */
+    public ByteBuffer bytes() {
+        return bytes.asReadOnlyBuffer();
+    }
+
+    /**
+     * Decodes the file into this thread's reusable buffer and returns a view of it, without the byte order
+     * mark. The view is only valid until the next file is decoded on the same thread, so callers must copy
+     * whatever they keep; {@code subSequence} and {@code toString} already return copies.
+     */
+    public CharSequence text() {
+        long start = Metrics.start();
+        ByteBuffer in = bytes();
+        in.position(contentStart);
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        long maxChars = (long) (in.remaining() * decoder.maxCharsPerByte()) + 1;
+        char[] buffer = DECODE_BUFFER.get();
+        if (buffer.length < maxChars) {
+            buffer = new char[(int) Math.min(maxChars, Integer.MAX_VALUE - 8)];
+            if (buffer.length <= MAX_DECODE_BUFFER) {
+                DECODE_BUFFER.set(buffer);
+            }
+        }
+        CharBuffer out = CharBuffer.wrap(buffer);
+        CoderResult result = decoder.decode(in, out, true);
+        if (result.isUnderflow()) {
+            decoder.flush(out);
+        }
+        Metrics.stop(Metrics.Phase.DECODE, start);
+        return new DecodedText(buffer, out.position());
+    }
+
+    /**
+     * A reader that decodes the file incrementally, without the byte order mark. Unlike {@link #text()} it
+     * never holds more than a small window of the file as characters, so memory stays bounded however
+     * large the file is.
+     */
+    public Reader reader() {
+        ByteBuffer in = bytes();
+        in.position(contentStart);
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return new InputStreamReader(new ByteBufferInputStream(in), decoder);
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * Plain array-backed view handed to the lexers, which read it one {@code charAt} at a time.
+     */
+    private static final class DecodedText implements CharSequence {
+        private final char[] chars;
+        private final int length;
+
+        private DecodedText(char[] chars, int length) {
+            this.chars = chars;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index >= length) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || start > end || end > length) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+            }
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.laykon.source;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds the source files below a root directory, listing directories in parallel on a fork-join pool.
+ * Entries are skipped by the built-in excludes, extra patterns and every {@code .gitignore} on the way;
+ * an excluded directory is never listed, so nothing below it is touched. Files are kept by extension, and
+ * symbolic links to directories are not followed.
+ * <p>
+ * Results come in the order of a sequential depth-first walk, each directory's entries in listing order,
+ * so the model does not depend on the thread count.
+ */
+public final class SourceScanner {
+
+    private final Path root;
+    private final Set<String> extensions;
+    private final IgnoreRules rules;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param extensions file extensions to keep, without the dot
+     * @param ignores    extra exclude patterns in {@code .gitignore} syntax, relative to {@code root}
+     * @param defaults   whether to also apply {@link IgnoreRules#DEFAULTS}
+     */
+    public SourceScanner(Path root, Set<String> extensions, List<String> ignores, boolean defaults,
+                         ForkJoinPool pool) {
+        this.root = root;
+        this.extensions = extensions;
+        this.pool = pool;
+        IgnoreRules r = defaults ? IgnoreRules.NONE.with("", IgnoreRules.DEFAULTS) : IgnoreRules.NONE;
+        this.rules = r.with("", ignores);
+    }
+
+    /**
+     * Checks an extra exclude pattern before it is passed to the constructor.
+     *
+     * @throws IllegalArgumentException if it has a malformed bracket set
+     */
+    public static void checkIgnore(String pattern) {
+        IgnoreRules.check(pattern);
+    }
+
+    /**
+     * The source files and directories below {@code dir}, the root or a directory below it, applying the
+     * exclude patterns of the directories above it too. Empty when {@code dir} itself is excluded.
+     */
+    public Listing scan(Path dir) {
+        IgnoreRules inherited = Files.isDirectory(dir) ? rulesAbove(dir, true) : null;
+        if (inherited == null) {
+            return new Listing(Collections.emptyList(), Collections.emptyList());
+        }
+        Node tree = pool.invoke(new DirectoryTask(dir, base(dir), inherited));
+        List<Path> files = new ArrayList<>();
+        List<Path> directories = new ArrayList<>();
+        tree.flatten(files, directories);
+        return new Listing(files, directories);
+    }
+
+    /**
+     * Whether {@code path}, below the root, is a source file the scanner would keep: it has a source
+     * extension and neither it nor a directory above it is excluded.
+     */
+    public boolean accepts(Path path) {
+        return extensions.contains(extension(path.getFileName().toString())) && rulesAbove(path, false) != null;
+    }
+
+    /**
+     * The rules that apply inside the directory holding {@code path}, or {@code null} when {@code path} or a
+     * directory above it is excluded.
+     */
+    private IgnoreRules rulesAbove(Path path, boolean directory) {
+        Path relative = root.relativize(path);
+        IgnoreRules inherited = rules;
+        Path current = root;
+        StringBuilder base = new StringBuilder();
+        int count = relative.toString().isEmpty() ? 0 : relative.getNameCount();
+        for (int i = 0; i < count; i++) {
+            String name = relative.getName(i).toString();
+            inherited = inherited.withGitignore(current, base.toString());
+            if (inherited.ignores(base + name, name, directory || i < count - 1)) {
+                return null;
+            }
+            current = current.resolve(name);
+            base.append(name).append('/');
+        }
+        return inherited;
+    }
+
+    // The path of dir relative to the root, with '/' separators and a trailing '/', or empty for the root.
+    private String base(Path dir) {
+        StringBuilder base = new StringBuilder();
+        Path relative = root.relativize(dir);
+        if (!relative.toString().isEmpty()) {
+            for (Path name : relative) {
+                base.append(name).append('/');
+            }
+        }
+        return base.toString();
+    }
+
+    static String extension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? "" : fileName.substring(dot + 1);
+    }
+
+    /**
+     * Source files and directories in walk order; {@code directories} starts with the scanned directory.
+     */
+    public static final class Listing {
+        private final List<Path> files;
+        private final List<Path> directories;
+
+        private Listing(List<Path> files, List<Path> directories) {
+            this.files = files;
+            this.directories = directories;
+        }
+
+        public List<Path> files() {
+            return files;
+        }
+
+        public List<Path> directories() {
+            return directories;
+        }
+    }
+
+    // A listed directory: its files and subdirectories, in listing order.
+    private static final class Node {
+        private final Path dir;
+        private final List<Object> entries = new ArrayList<>();
+
+        private Node(Path dir) {
+            this.dir = dir;
+        }
+
+        void flatten(List<Path> files, List<Path> directories) {
+            directories.add(dir);
+            for (Object entry : entries) {
+                if (entry instanceof Node) {
+                    ((Node) entry).flatten(files, directories);
+                } else {
+                    files.add((Path) entry);
+                }
+            }
+        }
+    }
+
+    private final class DirectoryTask extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final String base;
+        private final IgnoreRules inherited;
+
+        DirectoryTask(Path dir, String base, IgnoreRules inherited) {
+            this.dir = dir;
+            this.base = base;
+            this.inherited = inherited;
+        }
+
+        @Override
+        protected Node compute() {
+            Node node = new Node(dir);
+            IgnoreRules local = inherited.withGitignore(dir, base);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (NoSuchFileException e) {
+                        // Deleted since the directory was listed.
+                        continue;
+                    }
+                    if (attrs.isDirectory()) {
+                        if (!local.ignores(base + name, name, true)) {
+                            DirectoryTask task = new DirectoryTask(entry, base + name + "/", local);
+                            task.fork();
+                            node.entries.add(task);
+                        }
+                    } else if (extensions.contains(extension(name))
+                            && (attrs.isRegularFile() || attrs.isSymbolicLink() && Files.isRegularFile(entry))
+                            && !local.ignores(base + name, name, false)) {
+                        node.entries.add(entry);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            for (int i = 0; i < node.entries.size(); i++) {
+                if (node.entries.get(i) instanceof DirectoryTask) {
+                    node.entries.set(i, ((DirectoryTask) node.entries.get(i)).join());
+                }
+            }
+            return node;
+        }
+    }
+}
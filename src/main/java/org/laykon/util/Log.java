@@ -0,0 +1,179 @@
+package org.laykon.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Level-gated logging that keeps I/O off the calling threads. Messages are passed as suppliers, so a
+ * disabled level costs one comparison and builds no string. Enabled records go into a bounded lock-free
+ * ring buffer that a background thread drains to standard output; a producer only waits when the buffer
+ * is full, so no record is lost.
+ * <p>
+ * Each record shows the time since the previous record of the same thread, which stays meaningful when
+ * several threads log at once.
+ */
+public final class Log {
+
+    public enum Level {
+        ERROR, WARN, INFO, DEBUG, TRACE
+    }
+
+    private static final int CAPACITY = 1 << 13;
+    private static final int MASK = CAPACITY - 1;
+
+    private static volatile int threshold = Level.WARN.ordinal();
+
+    // Slot i holds the record numbered seq when sequences[i] == seq + 1, and is free for it when == seq.
+    private static final Record[] SLOTS = new Record[CAPACITY];
+    private static final AtomicLongArray SEQUENCES = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong CLAIMED = new AtomicLong();
+    private static volatile long written = 0L;
+
+    private static final ThreadLocal<long[]> LAST_NANOS =
+            ThreadLocal.withInitial(() -> new long[]{System.nanoTime()});
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            SEQUENCES.set(i, i);
+        }
+    }
+
+    private Log() {
+    }
+
+    public static void setLevel(Level level) {
+        threshold = level.ordinal();
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() <= threshold;
+    }
+
+    public static void error(Supplier<String> message) {
+        log(Level.ERROR, message);
+    }
+
+    public static void warn(Supplier<String> message) {
+        log(Level.WARN, message);
+    }
+
+    public static void info(Supplier<String> message) {
+        log(Level.INFO, message);
+    }
+
+    public static void debug(Supplier<String> message) {
+        log(Level.DEBUG, message);
+    }
+
+    public static void trace(Supplier<String> message) {
+        log(Level.TRACE, message);
+    }
+
+    public static void log(Level level, Supplier<String> message) {
+        if (level.ordinal() > threshold) {
+            return;
+        }
+        long[] last = LAST_NANOS.get();
+        long now = System.nanoTime();
+        Record record = new Record(level, Thread.currentThread().getName(), now - last[0], message.get());
+        last[0] = now;
+
+        Drain.start();
+        long seq = CLAIMED.getAndIncrement();
+        int slot = (int) (seq & MASK);
+        while (SEQUENCES.get(slot) != seq) {
+            // Full: the writer has not yet taken the record a lap ahead of this one.
+            LockSupport.unpark(Drain.THREAD);
+            Thread.yield();
+        }
+        SLOTS[slot] = record;
+        SEQUENCES.set(slot, seq + 1);
+    }
+
+    /**
+     * Waits until every record logged so far has been written out.
+     */
+    public static void flush() {
+        long target = CLAIMED.get();
+        if (target == 0L) {
+            return;
+        }
+        while (written < target) {
+            LockSupport.unpark(Drain.THREAD);
+            LockSupport.parkNanos(100_000L);
+        }
+    }
+
+    /**
+     * The single consumer: takes records in sequence order, formats them and writes them out, flushing
+     * whenever the buffer runs empty.
+     */
+    private static final class Drain implements Runnable {
+        private static final Thread THREAD = new Thread(new Drain(), "log-writer");
+
+        static {
+            THREAD.setDaemon(true);
+            THREAD.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-flush"));
+        }
+
+        // Referencing the class starts the thread once.
+        static void start() {
+        }
+
+        @Override
+        public void run() {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+            StringBuilder line = new StringBuilder(256);
+            long next = 0L;
+            while (true) {
+                int slot = (int) (next & MASK);
+                if (SEQUENCES.get(slot) != next + 1) {
+                    try {
+                        out.flush();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                    written = next;
+                    LockSupport.parkNanos(1_000_000L);
+                    continue;
+                }
+                Record r = SLOTS[slot];
+                SLOTS[slot] = null;
+                SEQUENCES.set(slot, next + CAPACITY);
+                next++;
+
+                line.setLength(0);
+                line.append('[').append(r.level.name().toLowerCase(Locale.ROOT)).append(" +")
+                        .append(r.elapsedNanos / 1_000_000L).append("ms ").append(r.thread).append("] ")
+                        .append(r.message).append('\n');
+                try {
+                    out.append(line);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static final class Record {
+        private final Level level;
+        private final String thread;
+        private final long elapsedNanos;
+        private final String message;
+
+        private Record(Level level, String thread, long elapsedNanos, String message) {
+            this.level = level;
+            this.thread = thread;
+            this.elapsedNanos = elapsedNanos;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package org.laykon.util;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Run-wide counters and timings: time per phase, files, bytes, types and a parse time histogram per parser,
+ * and the slowest files. Recording is safe from any thread and, apart from tracking the slowest files,
+ * never locks; while disabled every call returns after reading one flag.
+ * <p>
+ * Phases run concurrently on the parser pool report time summed over all threads, so their total may
+ * exceed the wall clock. Lexing and decoding happen inside the parse phase and are part of its time.
+ * <p>
+ * Queues between pipeline stages report their depth at every hand-over and the time producers spent
+ * blocked on a full queue and consumers idle on an empty one, which shows the stage holding up the rest.
+ */
+public final class Metrics {
+
+    public enum Phase {
+        WALK, CACHE, READ, DECODE, LEX, PARSE, MERGE, SNAPSHOT, WRITE
+    }
+
+    private static final int SLOWEST = 10;
+
+    private static volatile boolean enabled = false;
+    private static long startNanos = 0L;
+
+    private static final LongAdder[] PHASE_NANOS = adders(Phase.values().length);
+    private static final LongAdder[] PHASE_CALLS = adders(Phase.values().length);
+    private static final Map<String, ParserStats> PARSERS = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, QueueStats> QUEUES = new ConcurrentHashMap<>();
+
+    // Min-heap of the slowest files seen so far; floor is the fastest of them once the heap is full.
+    private static final PriorityQueue<FileTiming> SLOWEST_FILES = new PriorityQueue<>(SLOWEST + 1);
+    private static volatile long slowestFloor = Long.MIN_VALUE;
+
+    private Metrics() {
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+        if (on) {
+            startNanos = System.nanoTime();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing; pass the result to {@link #stop}.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public static void stop(Phase phase, long start) {
+        if (enabled) {
+            PHASE_NANOS[phase.ordinal()].add(System.nanoTime() - start);
+            PHASE_CALLS[phase.ordinal()].increment();
+        }
+    }
+
+    public static void count(String counter) {
+        if (enabled) {
+            COUNTERS.computeIfAbsent(counter, k -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Records one item put on {@code queue}, which then held {@code depth} items, after the producer was
+     * blocked for {@code blockedNanos} waiting for room.
+     */
+    public static void enqueue(String queue, int depth, long blockedNanos) {
+        if (enabled) {
+            QueueStats q = QUEUES.computeIfAbsent(queue, k -> new QueueStats());
+            q.items.increment();
+            q.depth.add(depth);
+            q.maxDepth.accumulate(depth);
+            q.blockedNanos.add(blockedNanos);
+        }
+    }
+
+    /**
+     * Records a consumer of {@code queue} having waited {@code idleNanos} for an item.
+     */
+    public static void dequeue(String queue, long idleNanos) {
+        if (enabled) {
+            QUEUES.computeIfAbsent(queue, k -> new QueueStats()).idleNanos.add(idleNanos);
+        }
+    }
+
+    /**
+     * Records one file parsed by {@code parser}, taking {@code nanos} and yielding {@code types} types.
+     * The time counts towards the parse phase.
+     */
+    public static void file(String parser, Path file, long bytes, int types, long nanos) {
+        if (!enabled) {
+            return;
+        }
+        PHASE_NANOS[Phase.PARSE.ordinal()].add(nanos);
+        PHASE_CALLS[Phase.PARSE.ordinal()].increment();
+        PARSERS.computeIfAbsent(parser, k -> new ParserStats()).add(bytes, types, nanos);
+        if (nanos > slowestFloor) {
+            synchronized (SLOWEST_FILES) {
+                SLOWEST_FILES.add(new FileTiming(file, parser, bytes, nanos));
+                if (SLOWEST_FILES.size() > SLOWEST) {
+                    SLOWEST_FILES.poll();
+                    slowestFloor = SLOWEST_FILES.peek().nanos;
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints the phases, parsers, slowest files, queues and counters recorded so far.
+     */
+    public static void printSummary(PrintStream out) {
+        out.printf(Locale.ROOT, "Run summary (%.1f ms wall)%n", millis(System.nanoTime() - startNanos));
+        out.printf(Locale.ROOT, "  %-10s %10s %12s%n", "phase", "calls", "total ms");
+        for (Phase phase : Phase.values()) {
+            long calls = PHASE_CALLS[phase.ordinal()].sum();
+            if (calls > 0) {
+                out.printf(Locale.ROOT, "  %-10s %10d %12.1f%n", name(phase), calls,
+                        millis(PHASE_NANOS[phase.ordinal()].sum()));
+            }
+        }
+        if (!PARSERS.isEmpty()) {
+            out.printf(Locale.ROOT, "  %-28s %8s %12s %8s %12s %9s %9s %9s%n",
+                    "parser", "files", "bytes", "types", "total ms", "p50 ms", "p90 ms", "p99 ms");
+            for (Map.Entry<String, ParserStats> e : new TreeMap<>(PARSERS).entrySet()) {
+                ParserStats s = e.getValue();
+                out.printf(Locale.ROOT, "  %-28s %8d %12d %8d %12.1f %9.2f %9.2f %9.2f%n", e.getKey(),
+                        s.files.sum(), s.bytes.sum(), s.types.sum(), millis(s.nanos.sum()),
+                        s.percentileMillis(0.50), s.percentileMillis(0.90), s.percentileMillis(0.99));
+            }
+        }
+        List<FileTiming> slowest = slowest();
+        if (!slowest.isEmpty()) {
+            out.println("  slowest files:");
+            for (FileTiming f : slowest) {
+                out.printf(Locale.ROOT, "  %10.1f ms  %s (%s, %d bytes)%n",
+                        millis(f.nanos), f.file, f.parser, f.bytes);
+            }
+        }
+        if (!QUEUES.isEmpty()) {
+            out.printf(Locale.ROOT, "  %-10s %10s %10s %10s %12s %12s%n",
+                    "queue", "items", "avg depth", "max depth", "blocked ms", "idle ms");
+            for (Map.Entry<String, QueueStats> e : new TreeMap<>(QUEUES).entrySet()) {
+                QueueStats q = e.getValue();
+                out.printf(Locale.ROOT, "  %-10s %10d %10.1f %10d %12.1f %12.1f%n", e.getKey(), q.items.sum(),
+                        q.averageDepth(), q.maxDepth.get(), millis(q.blockedNanos.sum()), millis(q.idleNanos.sum()));
+            }
+        }
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(COUNTERS).entrySet()) {
+            out.printf(Locale.ROOT, "  %s: %d%n", e.getKey(), e.getValue().sum());
+        }
+    }
+
+    /**
+     * Writes everything {@link #printSummary} shows to {@code file} as JSON, times in milliseconds.
+     */
+    public static void writeJson(Path file) throws IOException {
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("{\n  \"wallMs\": " + format(millis(System.nanoTime() - startNanos)) + ",\n  \"phases\": {");
+            String sep = "\n";
+            for (Phase phase : Phase.values()) {
+                long calls = PHASE_CALLS[phase.ordinal()].sum();
+                if (calls > 0) {
+                    w.write(sep + "    " + quote(name(phase)) + ": {\"calls\": " + calls + ", \"totalMs\": "
+                            + format(millis(PHASE_NANOS[phase.ordinal()].sum())) + "}");
+                    sep = ",\n";
+                }
+            }
+            w.write("\n  },\n  \"parsers\": {");
+            sep = "\n";
+            for (Map.Entry<String, ParserStats> e : new TreeMap<>(PARSERS).entrySet()) {
+                ParserStats s = e.getValue();
+                w.write(sep + "    " + quote(e.getKey()) + ": {\"files\": " + s.files.sum() + ", \"bytes\": "
+                        + s.bytes.sum() + ", \"types\": " + s.types.sum() + ", \"totalMs\": "
+                        + format(millis(s.nanos.sum())) + ", \"p50Ms\": " + format(s.percentileMillis(0.50))
+                        + ", \"p90Ms\": " + format(s.percentileMillis(0.90)) + ", \"p99Ms\": "
+                        + format(s.percentileMillis(0.99)) + "}");
+                sep = ",\n";
+            }
+            w.write("\n  },\n  \"slowestFiles\": [");
+            sep = "\n";
+            for (FileTiming f : slowest()) {
+                w.write(sep + "    {\"file\": " + quote(f.file.toString()) + ", \"parser\": " + quote(f.parser)
+                        + ", \"bytes\": " + f.bytes + ", \"ms\": " + format(millis(f.nanos)) + "}");
+                sep = ",\n";
+            }
+            w.write("\n  ],\n  \"queues\": {");
+            sep = "\n";
+            for (Map.Entry<String, QueueStats> e : new TreeMap<>(QUEUES).entrySet()) {
+                QueueStats q = e.getValue();
+                w.write(sep + "    " + quote(e.getKey()) + ": {\"items\": " + q.items.sum() + ", \"avgDepth\": "
+                        + format(q.averageDepth()) + ", \"maxDepth\": " + q.maxDepth.get() + ", \"blockedMs\": "
+                        + format(millis(q.blockedNanos.sum())) + ", \"idleMs\": "
+                        + format(millis(q.idleNanos.sum())) + "}");
+                sep = ",\n";
+            }
+            w.write("\n  },\n  \"counters\": {");
+            sep = "\n";
+            for (Map.Entry<String, LongAdder> e : new TreeMap<>(COUNTERS).entrySet()) {
+                w.write(sep + "    " + quote(e.getKey()) + ": " + e.getValue().sum());
+                sep = ",\n";
+            }
+            w.write("\n  }\n}\n");
+        }
+    }
+
+    // Slowest first.
+    private static List<FileTiming> slowest() {
+        List<FileTiming> files;
+        synchronized (SLOWEST_FILES) {
+            files = new ArrayList<>(SLOWEST_FILES);
+        }
+        files.sort(Collections.reverseOrder());
+        return files;
+    }
+
+    private static String name(Phase phase) {
+        return phase.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static final class ParserStats {
+        private final LongAdder files = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder types = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        // Bucket b counts files parsed in [2^b, 2^(b+1)) microseconds; bucket 0 also takes anything faster.
+        private final LongAdder[] histogram = adders(Long.SIZE);
+
+        void add(long fileBytes, int fileTypes, long fileNanos) {
+            files.increment();
+            bytes.add(fileBytes);
+            types.add(fileTypes);
+            nanos.add(fileNanos);
+            long micros = Math.max(1L, fileNanos / 1_000L);
+            histogram[Long.SIZE - 1 - Long.numberOfLeadingZeros(micros)].increment();
+        }
+
+        // The upper bound of the bucket holding the given fraction of files, so within a factor of two.
+        double percentileMillis(double fraction) {
+            long[] counts = new long[histogram.length];
+            long total = 0;
+            for (int b = 0; b < counts.length; b++) {
+                counts[b] = histogram[b].sum();
+                total += counts[b];
+            }
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= rank && seen > 0) {
+                    return (1L << Math.min(b + 1, 62)) / 1_000.0;
+                }
+            }
+            return 0.0;
+        }
+    }
+
+    private static final class QueueStats {
+        private final LongAdder items = new LongAdder();
+        private final LongAdder depth = new LongAdder();
+        private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0L);
+        private final LongAdder blockedNanos = new LongAdder();
+        private final LongAdder idleNanos = new LongAdder();
+
+        double averageDepth() {
+            long n = items.sum();
+            return n == 0 ? 0.0 : (double) depth.sum() / n;
+        }
+    }
+
+    private static final class FileTiming implements Comparable<FileTiming> {
+        private final Path file;
+        private final String parser;
+        private final long bytes;
+        private final long nanos;
+
+        private FileTiming(Path file, String parser, long bytes, long nanos) {
+            this.file = file;
+            this.parser = parser;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public int compareTo(FileTiming other) {
+            return Long.compare(nanos, other.nanos);
+        }
+    }
+}
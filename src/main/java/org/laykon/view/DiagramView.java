@@ -0,0 +1,71 @@
+package org.laykon.view;
+
+import org.laykon.model.ModelRepository;
+import org.laykon.model.TypeModel;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The part of a model a diagram shows: a subset of its types, sorted by name, and which kinds of relation
+ * are drawn between them.
+ */
+public final class DiagramView {
+
+    private final ModelRepository repo;
+    private final TypeModel[] types;
+    // Null when every type of the model is shown.
+    private final Set<TypeModel> shown;
+    private final boolean inheritance;
+    private final boolean dependencies;
+
+    DiagramView(ModelRepository repo, TypeModel[] types, boolean everything, boolean inheritance, boolean dependencies) {
+        this.repo = repo;
+        this.types = types;
+        this.inheritance = inheritance;
+        this.dependencies = dependencies;
+        if (everything) {
+            shown = null;
+        } else {
+            shown = Collections.newSetFromMap(new IdentityHashMap<>(types.length * 2));
+            shown.addAll(Arrays.asList(types));
+        }
+    }
+
+    /**
+     * Every type and relation of {@code repo}.
+     */
+    public static DiagramView of(ModelRepository repo) {
+        return new DiagramView(repo, repo.ordered(), true, true, true);
+    }
+
+    /**
+     * The view of {@code types}, a part of this view's types, drawing the same relations.
+     */
+    DiagramView subset(TypeModel[] types) {
+        return new DiagramView(repo, types, false, inheritance, dependencies);
+    }
+
+    public ModelRepository repository() {
+        return repo;
+    }
+
+    public List<TypeModel> types() {
+        return Collections.unmodifiableList(Arrays.asList(types));
+    }
+
+    public boolean contains(TypeModel type) {
+        return shown == null || shown.contains(type);
+    }
+
+    public boolean showsInheritance() {
+        return inheritance;
+    }
+
+    public boolean showsDependencies() {
+        return dependencies;
+    }
+}
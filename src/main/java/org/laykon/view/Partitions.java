@@ -0,0 +1,136 @@
+package org.laykon.view;
+
+import org.laykon.model.TypeModel;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Splits a view into named parts that are small enough to render on their own. Every type of the view
+ * lands in exactly one part; parts keep the view's type order and relation kinds.
+ */
+public final class Partitions {
+
+    public static final String DEFAULT_PACKAGE = "(default)";
+
+    private Partitions() {
+    }
+
+    /**
+     * One part per package or namespace, sorted by name. A type declared outside any is placed by the
+     * directory of the file declaring it, relative to the directory all such files share.
+     */
+    public static Map<String, DiagramView> byPackage(DiagramView view) {
+        List<TypeModel> types = view.types();
+        Path base = null;
+        boolean located = false;
+        for (TypeModel t : types) {
+            Path dir = directoryOf(t);
+            if (t.namespace.isEmpty() && dir != null) {
+                base = located ? commonAncestor(base, dir) : dir;
+                located = true;
+            }
+        }
+
+        Map<String, List<TypeModel>> groups = new TreeMap<>();
+        for (TypeModel t : types) {
+            String name = t.namespace;
+            if (name.isEmpty()) {
+                Path dir = directoryOf(t);
+                name = dir == null || base == null || dir.equals(base) ? DEFAULT_PACKAGE
+                        : base.relativize(dir).toString().replace(dir.getFileSystem().getSeparator(), ".");
+            }
+            groups.computeIfAbsent(name, k -> new ArrayList<>()).add(t);
+        }
+
+        Map<String, DiagramView> parts = new LinkedHashMap<>();
+        groups.forEach((name, members) -> parts.put(name, view.subset(members.toArray(new TypeModel[0]))));
+        return parts;
+    }
+
+    /**
+     * Clusters of at most {@code maxTypes} related types, following the relations the view draws. Each
+     * cluster is named after its most connected type.
+     */
+    public static Map<String, DiagramView> byCluster(DiagramView view, int maxTypes) {
+        TypeModel[] types = view.types().toArray(new TypeModel[0]);
+        boolean[] included = new boolean[types.length];
+        Arrays.fill(included, true);
+        TypeGraph graph = TypeGraph.build(view.repository(), types, included,
+                view.showsInheritance(), view.showsDependencies());
+        int limit = Math.max(1, maxTypes);
+        int[] cluster = graph.clusters(limit);
+
+        int clusters = 0;
+        for (int c : cluster) {
+            clusters = Math.max(clusters, c + 1);
+        }
+        int[] clusterSizes = new int[clusters];
+        for (int c : cluster) {
+            clusterSizes[c]++;
+        }
+        // Clusters under half the limit, mostly leftovers and unrelated types, are packed together so
+        // they do not each become a diagram of their own.
+        int[] bin = new int[clusters];
+        int count = 0;
+        int open = -1;
+        int openSize = 0;
+        for (int c = 0; c < clusters; c++) {
+            if (clusterSizes[c] * 2 >= limit) {
+                bin[c] = count++;
+                continue;
+            }
+            if (open < 0 || openSize + clusterSizes[c] > limit) {
+                open = count++;
+                openSize = 0;
+            }
+            bin[c] = open;
+            openSize += clusterSizes[c];
+        }
+        for (int i = 0; i < cluster.length; i++) {
+            cluster[i] = bin[cluster[i]];
+        }
+
+        int[] sizes = new int[count];
+        int[] hub = new int[count];
+        Arrays.fill(hub, -1);
+        for (int i = 0; i < types.length; i++) {
+            int c = cluster[i];
+            sizes[c]++;
+            if (hub[c] < 0 || graph.degree(i) > graph.degree(hub[c])) {
+                hub[c] = i;
+            }
+        }
+        TypeModel[][] members = new TypeModel[count][];
+        for (int c = 0; c < count; c++) {
+            members[c] = new TypeModel[sizes[c]];
+            sizes[c] = 0;
+        }
+        for (int i = 0; i < types.length; i++) {
+            members[cluster[i]][sizes[cluster[i]]++] = types[i];
+        }
+
+        Map<String, DiagramView> parts = new LinkedHashMap<>();
+        String format = "cluster-%0" + String.valueOf(count).length() + "d-%s";
+        for (int c = 0; c < count; c++) {
+            parts.put(String.format(Locale.ROOT, format, c + 1, types[hub[c]].name), view.subset(members[c]));
+        }
+        return parts;
+    }
+
+    private static Path directoryOf(TypeModel t) {
+        Iterator<Path> sources = t.sources().iterator();
+        if (!sources.hasNext()) {
+            return null;
+        }
+        return sources.next().toAbsolutePath().normalize().getParent();
+    }
+
+    private static Path commonAncestor(Path a, Path b) {
+        Path base = a;
+        while (base != null && !b.startsWith(base)) {
+            base = base.getParent();
+        }
+        return base;
+    }
+}
@@ -0,0 +1,167 @@
+package org.laykon.view;
+
+import org.laykon.model.ModelRepository;
+import org.laykon.model.TypeModel;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Undirected graph of the relations between a fixed array of types, held as compressed adjacency arrays.
+ * Types are addressed by their index in that array; references that resolve to no type, to a type
+ * outside the graph or to the type itself are left out.
+ */
+final class TypeGraph {
+
+    private final int[] offsets;
+    private final int[] neighbours;
+
+    private TypeGraph(int[] offsets, int[] neighbours) {
+        this.offsets = offsets;
+        this.neighbours = neighbours;
+    }
+
+    /**
+     * Builds the graph over {@code types[i]} for every {@code i} with {@code included[i]} set, following
+     * inheritance and dependency references as requested.
+     */
+    static TypeGraph build(ModelRepository repo, TypeModel[] types, boolean[] included,
+                           boolean inheritance, boolean dependencies) {
+        Map<TypeModel, Integer> ids = new IdentityHashMap<>(types.length * 2);
+        for (int i = 0; i < types.length; i++) {
+            ids.put(types[i], i);
+        }
+
+        Edges edges = new Edges(types.length);
+        for (int i = 0; i < types.length; i++) {
+            if (!included[i]) {
+                continue;
+            }
+            TypeModel t = types[i];
+            if (inheritance) {
+                edges.addAll(repo, ids, included, i, t, t.extendsTypes);
+                edges.addAll(repo, ids, included, i, t, t.implementsTypes);
+            }
+            if (dependencies) {
+                edges.addAll(repo, ids, included, i, t, t.dependencies);
+            }
+        }
+
+        int[] offsets = new int[types.length + 1];
+        for (int i = 0; i < types.length; i++) {
+            offsets[i + 1] = offsets[i] + edges.degree[i];
+        }
+        int[] fill = Arrays.copyOf(offsets, types.length);
+        int[] neighbours = new int[offsets[types.length]];
+        for (int e = 0; e < edges.count; e++) {
+            neighbours[fill[edges.from[e]]++] = edges.to[e];
+            neighbours[fill[edges.to[e]]++] = edges.from[e];
+        }
+        return new TypeGraph(offsets, neighbours);
+    }
+
+    int size() {
+        return offsets.length - 1;
+    }
+
+    int degree(int node) {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    /**
+     * Breadth-first search from {@code sources} up to {@code hops} edges away. Returns the reached nodes,
+     * nearest first, sources included.
+     */
+    int[] around(int[] sources, int hops) {
+        int[] distance = new int[size()];
+        Arrays.fill(distance, -1);
+        int[] queue = new int[size()];
+        int tail = 0;
+        for (int s : sources) {
+            if (distance[s] < 0) {
+                distance[s] = 0;
+                queue[tail++] = s;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int node = queue[head];
+            if (distance[node] == hops) {
+                continue;
+            }
+            for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                int next = neighbours[e];
+                if (distance[next] < 0) {
+                    distance[next] = distance[node] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return Arrays.copyOf(queue, tail);
+    }
+
+    /**
+     * Splits the graph into clusters of at most {@code maxSize} nodes, each grown breadth-first from the
+     * lowest unassigned node so related types stay together. Without a size limit the clusters are the
+     * connected components. Returns the cluster of every node; clusters are numbered in order of discovery.
+     */
+    int[] clusters(int maxSize) {
+        int[] cluster = new int[size()];
+        Arrays.fill(cluster, -1);
+        int[] queue = new int[size()];
+        int next = 0;
+        for (int start = 0; start < cluster.length; start++) {
+            if (cluster[start] >= 0) {
+                continue;
+            }
+            int id = next++;
+            cluster[start] = id;
+            queue[0] = start;
+            int tail = 1;
+            for (int head = 0; head < tail && tail < maxSize; head++) {
+                int node = queue[head];
+                for (int e = offsets[node]; e < offsets[node + 1] && tail < maxSize; e++) {
+                    int neighbour = neighbours[e];
+                    if (cluster[neighbour] < 0) {
+                        cluster[neighbour] = id;
+                        queue[tail++] = neighbour;
+                    }
+                }
+            }
+        }
+        return cluster;
+    }
+
+    private static final class Edges {
+        private final int[] degree;
+        private int[] from;
+        private int[] to;
+        private int count;
+
+        Edges(int nodes) {
+            degree = new int[nodes];
+            from = new int[Math.max(16, nodes)];
+            to = new int[from.length];
+        }
+
+        void addAll(ModelRepository repo, Map<TypeModel, Integer> ids, boolean[] included, int i, TypeModel type,
+                    Collection<String> references) {
+            for (String ref : references.toArray(new String[0])) {
+                Integer j = ids.get(repo.resolve(ref, type));
+                if (j == null || j == i || !included[j]) {
+                    continue;
+                }
+                if (count == from.length) {
+                    from = Arrays.copyOf(from, count * 2);
+                    to = Arrays.copyOf(to, count * 2);
+                }
+                from[count] = i;
+                to[count] = j;
+                count++;
+                degree[i]++;
+                degree[j]++;
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package org.laykon.view;
+
+import org.laykon.model.ModelRepository;
+import org.laykon.model.TypeModel;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the part of a model to draw, so a huge model still yields a diagram PlantUML can render.
+ * <p>
+ * Types are first filtered by name: a type is kept when it matches an include pattern (or there are none)
+ * and no exclude pattern. Patterns are globs over the type name, where {@code *} stays within one
+ * {@code .} or {@code ::} separated segment, {@code **} spans segments and {@code ?} is any one character;
+ * a pattern without a separator is matched against the simple name. A {@code ::} in a pattern or focus
+ * type, as copied from a diagram, stands for the {@code .} the model joins names with. Around focus types, only those at
+ * most {@code hops} relations away are kept, counting only the relations the view draws and only
+ * through types the filters kept. Last, a cap keeps the types nearest the focus, or without one the types
+ * with the most relations.
+ */
+public final class ViewQuery {
+
+    public enum Relations {
+        ALL, INHERITANCE, DEPENDENCIES
+    }
+
+    private final List<Pattern> includes = new ArrayList<>();
+    private final List<Pattern> excludes = new ArrayList<>();
+    private final List<Pattern> includeSimple = new ArrayList<>();
+    private final List<Pattern> excludeSimple = new ArrayList<>();
+    private final List<String> focus = new ArrayList<>();
+    private int hops = 1;
+    private Relations relations = Relations.ALL;
+    private int maxTypes = Integer.MAX_VALUE;
+
+    public ViewQuery include(String glob) {
+        (isQualified(glob) ? includes : includeSimple).add(compile(modelName(glob)));
+        return this;
+    }
+
+    public ViewQuery exclude(String glob) {
+        (isQualified(glob) ? excludes : excludeSimple).add(compile(modelName(glob)));
+        return this;
+    }
+
+    /**
+     * Centres the view on {@code type}, as a reference the repository resolves. May be called repeatedly.
+     */
+    public ViewQuery focus(String type) {
+        focus.add(modelName(type));
+        return this;
+    }
+
+    public ViewQuery hops(int hops) {
+        this.hops = Math.max(0, hops);
+        return this;
+    }
+
+    public ViewQuery relations(Relations relations) {
+        this.relations = relations;
+        return this;
+    }
+
+    public ViewQuery maxTypes(int maxTypes) {
+        this.maxTypes = Math.max(0, maxTypes);
+        return this;
+    }
+
+    /**
+     * Whether this query keeps every type; such a view costs nothing to select.
+     */
+    public boolean selectsAll() {
+        return includes.isEmpty() && excludes.isEmpty() && includeSimple.isEmpty() && excludeSimple.isEmpty()
+                && focus.isEmpty() && maxTypes == Integer.MAX_VALUE;
+    }
+
+    /**
+     * Focus types {@code repo} does not know.
+     */
+    public List<String> unresolved(ModelRepository repo) {
+        List<String> missing = new ArrayList<>();
+        for (String f : focus) {
+            if (repo.resolve(f) == null) {
+                missing.add(f);
+            }
+        }
+        return missing;
+    }
+
+    public DiagramView select(ModelRepository repo) {
+        boolean inheritance = relations != Relations.DEPENDENCIES;
+        boolean dependencies = relations != Relations.INHERITANCE;
+        TypeModel[] all = repo.ordered();
+        if (selectsAll()) {
+            return new DiagramView(repo, all, true, inheritance, dependencies);
+        }
+
+        boolean[] candidate = new boolean[all.length];
+        int candidates = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (matches(all[i].name)) {
+                candidate[i] = true;
+                candidates++;
+            }
+        }
+
+        TypeGraph graph = null;
+        int[] selected;
+        if (!focus.isEmpty()) {
+            graph = TypeGraph.build(repo, all, candidate, inheritance, dependencies);
+            selected = graph.around(focusIndexes(repo, all, candidate), hops);
+        } else {
+            selected = new int[candidates];
+            int n = 0;
+            for (int i = 0; i < all.length; i++) {
+                if (candidate[i]) {
+                    selected[n++] = i;
+                }
+            }
+        }
+
+        if (selected.length > maxTypes) {
+            if (focus.isEmpty()) {
+                graph = TypeGraph.build(repo, all, candidate, inheritance, dependencies);
+                selected = mostConnected(graph, selected, maxTypes);
+            } else {
+                // Already nearest first.
+                selected = Arrays.copyOf(selected, maxTypes);
+            }
+        }
+
+        Arrays.sort(selected);
+        TypeModel[] types = new TypeModel[selected.length];
+        for (int i = 0; i < selected.length; i++) {
+            types[i] = all[selected[i]];
+        }
+        return new DiagramView(repo, types, false, inheritance, dependencies);
+    }
+
+    private int[] focusIndexes(ModelRepository repo, TypeModel[] all, boolean[] candidate) {
+        Map<TypeModel, Integer> ids = new IdentityHashMap<>();
+        for (String f : focus) {
+            TypeModel t = repo.resolve(f);
+            if (t != null) {
+                ids.put(t, -1);
+            }
+        }
+        int[] indexes = new int[ids.size()];
+        int n = 0;
+        for (int i = 0; i < all.length && n < indexes.length; i++) {
+            if (ids.containsKey(all[i]) && candidate[i]) {
+                indexes[n++] = i;
+            }
+        }
+        return Arrays.copyOf(indexes, n);
+    }
+
+    // Highest degree first, name order among equals.
+    private static int[] mostConnected(TypeGraph graph, int[] selected, int limit) {
+        long[] keys = new long[selected.length];
+        for (int i = 0; i < selected.length; i++) {
+            keys[i] = ((long) (Integer.MAX_VALUE - graph.degree(selected[i])) << 32) | selected[i];
+        }
+        Arrays.sort(keys);
+        int[] kept = new int[limit];
+        for (int i = 0; i < limit; i++) {
+            kept[i] = (int) keys[i];
+        }
+        return kept;
+    }
+
+    private boolean matches(String name) {
+        String simple = null;
+        if (!includes.isEmpty() || !includeSimple.isEmpty()) {
+            simple = simpleName(name);
+            if (!anyMatches(includes, name) && !anyMatches(includeSimple, simple)) {
+                return false;
+            }
+        }
+        if (!excludeSimple.isEmpty() && simple == null) {
+            simple = simpleName(name);
+        }
+        return !anyMatches(excludes, name) && !anyMatches(excludeSimple, simple);
+    }
+
+    private static boolean anyMatches(List<Pattern> patterns, String value) {
+        for (Pattern p : patterns) {
+            if (p.matcher(value).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isQualified(String glob) {
+        return glob.indexOf('.') >= 0 || glob.indexOf(':') >= 0;
+    }
+
+    // The diagram separates a namespace from its types with ::, the model always joins names with a dot.
+    private static String modelName(String name) {
+        return name.replace("::", ".");
+    }
+
+    private static String simpleName(String name) {
+        int i = Math.max(name.lastIndexOf('.'), name.lastIndexOf(':'));
+        return i < 0 ? name : name.substring(i + 1);
+    }
+
+    static Pattern compile(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 16);
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i++;
+                } else {
+                    regex.append("[^.:]*");
+                }
+            } else if (c == '?') {
+                regex.append("[^.:]");
+            } else if (Character.isLetterOrDigit(c) || c == '_') {
+                regex.append(c);
+            } else {
+                regex.append('\\').append(c);
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
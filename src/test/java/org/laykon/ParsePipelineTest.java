@@ -0,0 +1,57 @@
+package org.laykon;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.laykon.model.ModelRepository;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParsePipelineTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void filesAreMergedInTheOrderGivenWhateverTheThreadCounts() throws Exception {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            // Larger files first, so later files tend to finish parsing before earlier ones.
+            Path file = dir.resolve("T" + i + ".java");
+            StringBuilder body = new StringBuilder("package p; class T" + i + " {\n");
+            for (int f = 0; f < (40 - i) * 20; f++) {
+                body.append("    int f").append(f).append(";\n");
+            }
+            Files.writeString(file, body.append("}\n"));
+            files.add(file);
+        }
+        // One file the parser rejects must not stop the others.
+        Path broken = dir.resolve("Broken.java");
+        Files.writeString(broken, "class {");
+        files.add(20, broken);
+        files.add(dir.resolve("notes.txt"));
+
+        for (int threads : new int[]{1, 4}) {
+            ModelRepository repo = new ModelRepository();
+            ExecutorService readers = ParsePipeline.readers(3);
+            ForkJoinPool parsers = new ForkJoinPool(threads);
+            try {
+                new ParsePipeline(readers, 3, parsers, 2, null).run(files, repo);
+            } finally {
+                readers.shutdownNow();
+                parsers.shutdownNow();
+            }
+
+            assertEquals(files, new ArrayList<>(repo.sources()), threads + " threads");
+            assertEquals(40, repo.all().size());
+            assertTrue(repo.contains("p.T39"));
+        }
+    }
+}
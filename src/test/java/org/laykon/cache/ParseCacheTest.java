@@ -0,0 +1,148 @@
+package org.laykon.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.laykon.model.FieldModel;
+import org.laykon.model.MethodModel;
+import org.laykon.model.ModelFragment;
+import org.laykon.model.ModelRepository;
+import org.laykon.model.TypeKind;
+import org.laykon.model.TypeModel;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParseCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void savedEntriesAreServedAfterLoading() throws Exception {
+        Path file = dir.resolve("cache.bin");
+        Path source = dir.resolve("a.py");
+        byte[] hash = ParseCache.hash("class A: pass".getBytes(StandardCharsets.UTF_8));
+        ParseCache cache = ParseCache.load(file, "parsers-1");
+        cache.put(source, hash, "pkg.a", sample());
+        cache.save();
+
+        ModelFragment cached = ParseCache.load(file, "parsers-1").lookup(source, hash, "pkg.a");
+
+        assertNotNull(cached);
+        TypeModel t = cached.types().get(0);
+        assertEquals("pkg.a.A", t.name);
+        assertEquals(TypeKind.INTERFACE, t.kind());
+        assertTrue(t.isPartial());
+        assertEquals("x", t.fields.get(0).name);
+        assertEquals(3, t.fields.get(0).line);
+        assertEquals(List.of("int", "String"), t.methods.get(0).parameters);
+        assertEquals(7, t.methods.get(0).line);
+        assertEquals(Set.of("Base"), t.extendsTypes);
+        assertEquals(Set.of("Other"), t.dependencies);
+    }
+
+    @Test
+    void changedContentContextOrParsersMiss() throws Exception {
+        Path file = dir.resolve("cache.bin");
+        Path source = dir.resolve("a.py");
+        byte[] hash = ParseCache.hash(new byte[]{1});
+        ParseCache cache = ParseCache.load(file, "parsers-1");
+        cache.put(source, hash, "pkg.a", sample());
+        cache.save();
+
+        ParseCache same = ParseCache.load(file, "parsers-1");
+        assertNull(same.lookup(source, ParseCache.hash(new byte[]{2}), "pkg.a"));
+        assertNull(same.lookup(source, hash, "a"));
+        assertNull(ParseCache.load(file, "parsers-2").lookup(source, hash, "pkg.a"));
+    }
+
+    @Test
+    void onlyEntriesUsedInARunAreWrittenBack() throws Exception {
+        Path file = dir.resolve("cache.bin");
+        Path kept = dir.resolve("kept.py");
+        Path gone = dir.resolve("gone.py");
+        byte[] hash = ParseCache.hash(new byte[]{1});
+        ParseCache first = ParseCache.load(file, "parsers-1");
+        first.put(kept, hash, "", sample());
+        first.put(gone, hash, "", sample());
+        first.save();
+
+        ParseCache second = ParseCache.load(file, "parsers-1");
+        assertNotNull(second.lookup(kept, hash, ""));
+        second.save();
+
+        ParseCache third = ParseCache.load(file, "parsers-1");
+        assertNotNull(third.lookup(kept, hash, ""));
+        assertNull(third.lookup(gone, hash, ""));
+    }
+
+    @Test
+    void stringsLongerThan64KbAreSaved() throws Exception {
+        Path file = dir.resolve("cache.bin");
+        Path source = dir.resolve("a.ts");
+        byte[] hash = ParseCache.hash(new byte[]{1});
+        String type = "Map<string, " + "Array<number> | ".repeat(5000) + "null>";
+        ModelRepository scratch = new ModelRepository();
+        scratch.getOrCreate("a", "A", TypeKind.CLASS).fields.add(new FieldModel("x", type, 1));
+        ParseCache cache = ParseCache.load(file, "parsers-1");
+        cache.put(source, hash, "", ModelFragment.of(scratch));
+        cache.save();
+
+        ModelFragment cached = ParseCache.load(file, "parsers-1").lookup(source, hash, "");
+
+        assertNotNull(cached);
+        assertEquals(type, cached.types().get(0).fields.get(0).type);
+    }
+
+    @Test
+    void corruptFileStartsAnEmptyCache() throws Exception {
+        Path file = dir.resolve("cache.bin");
+        Path source = dir.resolve("a.py");
+        byte[] hash = ParseCache.hash(new byte[]{1});
+        ParseCache cache = ParseCache.load(file, "parsers-1");
+        cache.put(source, hash, "pkg.a", sample());
+        cache.save();
+        // The kind byte follows the length-prefixed local name "A".
+        byte[] bytes = Files.readAllBytes(file);
+        byte[] localName = {0, 0, 0, 1, 'A'};
+        int at = indexOf(bytes, localName) + localName.length;
+        bytes[at] = (byte) 0xff;
+        Files.write(file, bytes);
+
+        ParseCache loaded = ParseCache.load(file, "parsers-1");
+
+        assertNull(loaded.lookup(source, hash, "pkg.a"));
+        loaded.put(source, hash, "pkg.a", sample());
+        loaded.save();
+        assertNotNull(ParseCache.load(file, "parsers-1").lookup(source, hash, "pkg.a"));
+    }
+
+    private static int indexOf(byte[] bytes, byte[] part) {
+        for (int i = 0; i + part.length <= bytes.length; i++) {
+            if (Arrays.equals(bytes, i, i + part.length, part, 0, part.length)) {
+                return i;
+            }
+        }
+        throw new AssertionError("not found");
+    }
+
+    private static ModelFragment sample() {
+        ModelRepository scratch = new ModelRepository();
+        TypeModel t = scratch.getOrCreate("pkg.a", "A", TypeKind.INTERFACE);
+        t.markPartial();
+        t.fields.add(new FieldModel("x", "int", 3));
+        t.methods.add(new MethodModel("f", "void", List.of("int", "String"), 7));
+        t.extendsTypes.add("Base");
+        t.dependencies.add("Other");
+        return ModelFragment.of(scratch);
+    }
+}
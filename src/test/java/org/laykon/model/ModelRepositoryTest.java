@@ -0,0 +1,115 @@
+package org.laykon.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ModelRepositoryTest {
+
+    private static final Path A = Paths.get("src", "a", "Part.cs");
+    private static final Path B = Paths.get("src", "b", "Part.cs");
+
+    @Test
+    void partialDeclarationsCombineInPathOrderAndRetractPerFile() {
+        ModelRepository repo = new ModelRepository();
+        repo.merge(B, fragment(r -> {
+            TypeModel t = partial(r, TypeKind.CLASS);
+            t.fields.add(new FieldModel("y", "int"));
+            t.dependencies.add("Shared");
+            t.dependencies.add("OnlyB");
+        }));
+        repo.merge(A, fragment(r -> {
+            TypeModel t = partial(r, TypeKind.CLASS);
+            t.fields.add(new FieldModel("x", "int"));
+            t.extendsTypes.add("Base");
+            t.dependencies.add("Shared");
+        }));
+
+        TypeModel type = repo.resolve("Demo.Part");
+        assertEquals(List.of("x", "y"), names(type.fields));
+        assertEquals(Set.of("Base"), type.extendsTypes);
+        assertEquals(Set.of("OnlyB", "Shared"), type.dependencies);
+
+        repo.retract(A);
+
+        assertSame(type, repo.resolve("Demo.Part"));
+        assertEquals(List.of("y"), names(type.fields));
+        assertEquals(Set.of(), type.extendsTypes);
+        // Still declared by the remaining part.
+        assertEquals(Set.of("OnlyB", "Shared"), type.dependencies);
+        assertEquals(Set.of(B), type.sources());
+    }
+
+    @Test
+    void remergingAFileReplacesWhatItContributed() {
+        ModelRepository repo = new ModelRepository();
+        repo.merge(A, fragment(r -> partial(r, TypeKind.CLASS).fields.add(new FieldModel("old", "int"))));
+        repo.merge(B, fragment(r -> partial(r, TypeKind.CLASS).fields.add(new FieldModel("b", "int"))));
+
+        repo.merge(A, fragment(r -> partial(r, TypeKind.CLASS).fields.add(new FieldModel("new", "int"))));
+
+        assertEquals(List.of("new", "b"), names(repo.resolve("Demo.Part").fields));
+    }
+
+    @Test
+    void firstCompleteDeclarationByPathWinsAndTheNextTakesOver() {
+        ModelRepository repo = new ModelRepository();
+        repo.merge(B, fragment(r -> r.getOrCreate("Demo", "Part", TypeKind.CLASS)
+                .fields.add(new FieldModel("q", "int"))));
+        repo.merge(A, fragment(r -> r.getOrCreate("Demo", "Part", TypeKind.INTERFACE)
+                .fields.add(new FieldModel("p", "int"))));
+
+        TypeModel type = repo.resolve("Demo.Part");
+        assertEquals(TypeKind.INTERFACE, type.kind());
+        assertEquals(List.of("p"), names(type.fields));
+
+        repo.retract(A);
+
+        assertEquals(TypeKind.CLASS, type.kind());
+        assertEquals(List.of("q"), names(type.fields));
+    }
+
+    @Test
+    void typesLeftWithoutContributionsAreDroppedAndTheirSymbolsPassOn() {
+        ModelRepository repo = new ModelRepository();
+        repo.merge(A, fragment(r -> r.getOrCreate("alpha", "Node", TypeKind.CLASS)));
+        repo.merge(B, fragment(r -> r.getOrCreate("beta", "Node", TypeKind.CLASS)));
+
+        assertEquals("alpha.Node", repo.resolve("Node").name);
+
+        repo.retract(A);
+
+        assertFalse(repo.contains("alpha.Node"));
+        assertEquals("beta.Node", repo.resolve("Node").name);
+        assertEquals(Set.of(B), repo.sources());
+
+        repo.retract(B);
+
+        assertNull(repo.resolve("Node"));
+    }
+
+    private static TypeModel partial(ModelRepository scratch, TypeKind kind) {
+        TypeModel t = scratch.getOrCreate("Demo", "Part", kind);
+        t.markPartial();
+        return t;
+    }
+
+    private static ModelFragment fragment(Consumer<ModelRepository> build) {
+        ModelRepository scratch = new ModelRepository();
+        build.accept(scratch);
+        return ModelFragment.of(scratch);
+    }
+
+    private static List<String> names(List<FieldModel> fields) {
+        return fields.stream().map(f -> f.name).toList();
+    }
+}
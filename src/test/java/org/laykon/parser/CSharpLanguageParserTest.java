@@ -0,0 +1,49 @@
+package org.laykon.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.laykon.model.ModelFragment;
+import org.laykon.model.TypeKind;
+import org.laykon.model.TypeModel;
+import org.laykon.source.SourceFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CSharpLanguageParserTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void fileMayStartWithTheTypeKeyword() throws Exception {
+        ModelFragment fragment = parse("class Foo { int x; }");
+
+        TypeModel type = fragment.types().get(0);
+        assertEquals("Foo", type.name);
+        assertFalse(type.isPartial());
+        assertEquals("x", type.fields.get(0).name);
+    }
+
+    @Test
+    void partialTypesAndBaseListsAreRead() throws Exception {
+        ModelFragment fragment = parse("namespace Demo;\npublic partial struct Point : IEquatable<Point> { }\n");
+
+        TypeModel type = fragment.types().get(0);
+        assertEquals("Demo.Point", type.name);
+        assertEquals(TypeKind.STRUCT, type.kind());
+        assertTrue(type.isPartial());
+        assertEquals(Set.of("IEquatable<Point>"), type.extendsTypes);
+    }
+
+    private ModelFragment parse(String source) throws Exception {
+        Path file = dir.resolve("Test.cs");
+        Files.writeString(file, source);
+        return new CSharpLanguageParser().parse(SourceFile.open(file));
+    }
+}
@@ -0,0 +1,44 @@
+package org.laykon.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.laykon.parser.TypeScriptLexerTest.texts;
+
+class CSharpLexerTest {
+
+    @Test
+    void interpolatedStringWithNestedLiteralsIsOneToken() {
+        TokenStream tokens = CSharpLexer.tokenize("var s = $\"a{(x ? \"}\" : \"b\")}c\"; class A {}");
+
+        assertEquals(List.of("var", "s", "=", "$\"a{(x ? \"}\" : \"b\")}c\"", ";", "class", "A", "{", "}"),
+                texts(tokens));
+        assertEquals(TokenStream.STRING, tokens.kind(3));
+        assertEquals(8, tokens.match(7));
+    }
+
+    @Test
+    void verbatimStringKeepsDoubledQuotes() {
+        TokenStream tokens = CSharpLexer.tokenize("x = @\"a \"\"b\"\" c\"; y");
+
+        assertEquals(List.of("x", "=", "@\"a \"\"b\"\" c\"", ";", "y"), texts(tokens));
+    }
+
+    @Test
+    void rawStringWithInterpolationHolesIsOneToken() {
+        TokenStream tokens = CSharpLexer.tokenize("x = $$\"\"\"a {{x + \"}\"}} b\"\"\"; y");
+
+        assertEquals(List.of("x", "=", "$$\"\"\"a {{x + \"}\"}} b\"\"\"", ";", "y"), texts(tokens));
+        assertEquals(TokenStream.STRING, tokens.kind(2));
+    }
+
+    @Test
+    void preprocessorLinesAreDroppedAndVerbatimIdentifiersAreWords() {
+        TokenStream tokens = CSharpLexer.tokenize("#if DEBUG\nclass @class {}\n#endif\nc = '}';");
+
+        assertEquals(List.of("class", "class", "{", "}", "c", "=", "'}'", ";"), texts(tokens));
+        assertEquals(TokenStream.WORD, tokens.kind(1));
+    }
+}
@@ -0,0 +1,31 @@
+package org.laykon.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.laykon.model.ModelFragment;
+import org.laykon.model.TypeModel;
+import org.laykon.source.SourceFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JavaLanguageParserTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void membersReportTheLineTheyAreDeclaredOn() throws Exception {
+        Path file = dir.resolve("A.java");
+        Files.writeString(file, "package p;\n\npublic class A {\n\n    int x;\n\n    void m() {\n    }\n}\n");
+
+        ModelFragment fragment = new JavaLanguageParser().parse(SourceFile.open(file));
+
+        TypeModel type = fragment.types().get(0);
+        assertEquals("p.A", type.name);
+        assertEquals(5, type.fields.get(0).line);
+        assertEquals(7, type.methods.get(0).line);
+    }
+}
@@ -0,0 +1,45 @@
+package org.laykon.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PythonLineReaderTest {
+
+    @Test
+    void bracketsAndBackslashesJoinPhysicalLines() throws IOException {
+        List<String> lines = read("class A(Base,\n        Mixin):\n    def f(self, a,\n          b):  # c\n"
+                + "        x = 1 + \\\n            2\n");
+
+        assertEquals(List.of("1:0:class A(Base, Mixin):", "3:4:def f(self, a, b):", "5:8:x = 1 + 2"), lines);
+    }
+
+    @Test
+    void tripleQuotedStringsAreReducedToTheirQuotes() throws IOException {
+        List<String> lines = read("class A:\n    \"\"\"Doc\n    class Fake:\n    \"\"\"\n    y = 'it''s' # x\n");
+
+        assertEquals(List.of("1:0:class A:", "2:4:\"\"\"\"\"\"", "5:4:y = 'it''s'"), lines);
+    }
+
+    @Test
+    void blankAndCommentLinesAreSkippedAndTabsCountFour() throws IOException {
+        List<String> lines = read("\n# only a comment\n\n\treturn x\n");
+
+        assertEquals(List.of("4:4:return x"), lines);
+    }
+
+    // Each logical line as line number, indent and text.
+    private static List<String> read(String source) throws IOException {
+        PythonLineReader reader = new PythonLineReader(new StringReader(source));
+        List<String> lines = new ArrayList<>();
+        while (reader.next()) {
+            lines.add(reader.lineNumber() + ":" + reader.indent() + ":" + reader.text());
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,44 @@
+package org.laykon.parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.laykon.model.ModelFragment;
+import org.laykon.model.TypeModel;
+import org.laykon.source.SourceFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TypeScriptLanguageParserTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void functionTypesDependOnTheirParameterAndReturnTypes() throws Exception {
+        TypeModel type = parse("export class A {\n"
+                + "    cb: (a: Foo<T>, b?: Bar[]) => Promise<Baz>;\n"
+                + "    make: new () => Qux;\n"
+                + "}\n");
+
+        assertEquals(Set.of("Foo", "T", "Bar", "Promise", "Baz", "Qux"), type.dependencies);
+    }
+
+    @Test
+    void unbalancedAngleBracketsDoNotLoseTheFile() throws Exception {
+        TypeModel type = parse("export class A {\n    f: () => a < b;\n    g: Map<K, (v: V) => W>;\n}\n");
+
+        assertEquals(2, type.fields.size());
+        assertEquals(Set.of("a", "Map", "K", "V", "W"), type.dependencies);
+    }
+
+    private TypeModel parse(String source) throws Exception {
+        Path file = dir.resolve("a.ts");
+        Files.writeString(file, source);
+        ModelFragment fragment = new TypeScriptLanguageParser().parse(SourceFile.open(file));
+        return fragment.types().get(0);
+    }
+}
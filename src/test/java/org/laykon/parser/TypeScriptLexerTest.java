@@ -0,0 +1,48 @@
+package org.laykon.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TypeScriptLexerTest {
+
+    @Test
+    void templateLiteralWithNestedSubstitutionsIsOneToken() {
+        TokenStream tokens = TypeScriptLexer.tokenize("let s = `a${ f(`b${ {x: '}'}.x }c`) }d`; class A {}");
+
+        assertEquals(List.of("let", "s", "=", "`a${ f(`b${ {x: '}'}.x }c`) }d`", ";", "class", "A", "{", "}"),
+                texts(tokens));
+        assertEquals(TokenStream.STRING, tokens.kind(3));
+        // The braces inside the template are not counted, so the class body still pairs up.
+        assertEquals(8, tokens.match(7));
+    }
+
+    @Test
+    void slashIsRegexOnlyWhereAValueCannotPrecedeIt() {
+        TokenStream tokens = TypeScriptLexer.tokenize("x = a / b / c; y = /[/]}/g.test(z)");
+
+        assertEquals(List.of("x", "=", "a", "/", "b", "/", "c", ";", "y", "=", "/[/]}/g", ".", "test", "(", "z", ")"),
+                texts(tokens));
+        assertEquals(TokenStream.PUNCT, tokens.kind(3));
+        assertEquals(TokenStream.STRING, tokens.kind(10));
+    }
+
+    @Test
+    void commentsAreDropped() {
+        TokenStream tokens = TypeScriptLexer.tokenize("a // b {\n/* c } */ d");
+
+        assertEquals(List.of("a", "d"), texts(tokens));
+        assertEquals(2, tokens.line(1));
+    }
+
+    static List<String> texts(TokenStream tokens) {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            texts.add(tokens.text(i));
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,61 @@
+package org.laykon.snapshot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.laykon.model.FieldModel;
+import org.laykon.model.ModelFragment;
+import org.laykon.model.ModelRepository;
+import org.laykon.model.TypeKind;
+import org.laykon.model.TypeModel;
+import org.laykon.output.PlantUmlWriter;
+
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void loadedModelMatchesTheSavedOneAndKeepsProvenance() throws Exception {
+        Path a = dir.resolve("a").resolve("Part.cs");
+        Path b = dir.resolve("b").resolve("Part.cs");
+        ModelRepository repo = new ModelRepository();
+        repo.merge(a, part("x", "Base"));
+        repo.merge(b, part("y", "Other"));
+        Path file = dir.resolve("model.snapshot");
+
+        ModelSnapshot.save(file, repo);
+        ModelRepository loaded = ModelSnapshot.load(file);
+
+        assertTrue(ModelSnapshot.isSnapshot(file));
+        assertEquals(diagram(repo), diagram(loaded));
+        assertEquals(repo.sources(), loaded.sources());
+
+        // Each file's contribution survives, so one can still be taken out on its own.
+        repo.retract(a);
+        loaded.retract(a);
+        assertEquals(diagram(repo), diagram(loaded));
+        assertEquals(Set.of("Other"), loaded.resolve("Demo.Part").dependencies);
+    }
+
+    private static ModelFragment part(String field, String dependency) {
+        ModelRepository scratch = new ModelRepository();
+        TypeModel t = scratch.getOrCreate("Demo", "Part", TypeKind.CLASS);
+        t.markPartial();
+        t.fields.add(new FieldModel(field, "int", 4));
+        t.dependencies.add(dependency);
+        return ModelFragment.of(scratch);
+    }
+
+    private static String diagram(ModelRepository repo) throws Exception {
+        StringWriter w = new StringWriter();
+        PlantUmlWriter.write(w, repo);
+        return w.toString();
+    }
+}